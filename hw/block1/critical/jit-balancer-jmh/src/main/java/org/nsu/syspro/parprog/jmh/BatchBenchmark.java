@@ -0,0 +1,97 @@
+package org.nsu.syspro.parprog.jmh;
+
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.solution.CodeCache;
+import org.nsu.syspro.parprog.solution.CompilationStates;
+import org.nsu.syspro.parprog.solution.CompileRequest;
+import org.nsu.syspro.parprog.solution.CompilerBroker;
+import org.nsu.syspro.parprog.solution.MethodState;
+import org.nsu.syspro.parprog.solution.TieredCode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warm-up burst: {@link #methods} L1 requests submitted at once to a cold {@link CompilerBroker}, score is the time
+ * until all of them are compiled. The engine pays {@link #callMicros} per call regardless of the number of methods,
+ * e.g. compiler thread hand-off, so {@code maxBatch > 1} should win. Example:
+ * {@code java -jar target/benchmarks.jar BatchBenchmark}
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+    @Param({"1", "8"})
+    public int maxBatch;
+
+    @Param({"256"})
+    public int methods;
+
+    @Param({"200"})
+    public long callMicros;
+
+    @Param({"2"})
+    public int workers;
+
+    private CompilationStates states;
+    private CompilerBroker broker;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        states = new CompilationStates();
+        broker = new CompilerBroker(fixedCost(callMicros * 1_000), new CodeCache(), workers, methods, 100, 1,
+                maxBatch);
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        for (long id = 0; id < methods; id++) {
+            final MethodState state = states.of(id);
+            state.tryQueueL1();
+            broker.submit(new CompileRequest(new StandInEngines.Method(id), state, TieredCode.L1));
+        }
+        for (long id = 0; id < methods; id++) {
+            final MethodState state = states.of(id);
+            while (MethodState.readyTier(state.word()) < TieredCode.L1) {
+                state.awaitChange(state.word(), 10);
+            }
+        }
+    }
+
+    private static CompilationEngine fixedCost(long callNanos) {
+        return new CompilationEngine() {
+            @Override
+            public CompiledMethod compile_l1(MethodID method) {
+                StandInEngines.burn(callNanos);
+                return new StandInEngines.Code(method, 1);
+            }
+
+            @Override
+            public CompiledMethod compile_l2(MethodID method) {
+                StandInEngines.burn(callNanos);
+                return new StandInEngines.Code(method, 2);
+            }
+
+            @Override
+            public List<CompiledMethod> compile_batch(List<MethodID> methods, int level) {
+                StandInEngines.burn(callNanos);
+                final CompiledMethod[] result = new CompiledMethod[methods.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = new StandInEngines.Code(methods.get(i), level);
+                }
+                return List.of(result);
+            }
+
+            @Override
+            public boolean supportsBatch() {
+                return true;
+            }
+        };
+    }
+}
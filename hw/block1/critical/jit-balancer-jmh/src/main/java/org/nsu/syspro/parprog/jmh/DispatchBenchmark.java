@@ -0,0 +1,92 @@
+package org.nsu.syspro.parprog.jmh;
+
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.solution.SolutionThread;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code executeMethod} throughput and per-call overhead of every {@link UserThread} implementation.
+ * <br>
+ * Every JMH thread drives its own {@link UserThread} object (never started, so it is exactly one thread per
+ * {@link UserThread}, as `Same-thread-correctness` requires). All of them share the engines of one trial, so
+ * {@link SolutionThread}s share one compilation subsystem. Thread count is a JMH option ({@code -t}),
+ * see {@link ThreadSweep} to sweep it.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({"Interpreter", "AdaptiveCompiler", "CachingTopTierJIT", "SolutionThread"})
+        public String strategy;
+
+        @Param({"16", "1024"})
+        public int methods;
+
+        @Param({"0.0", "0.99"})
+        public double zipf;
+
+        @Param({"ULTRA_FAST", "FAST", "HARD"})
+        public String durations;
+
+        ExecutionEngine exec;
+        CompilationEngine compiler;
+        MethodID[] ids;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            final StandInEngines.Profile profile = StandInEngines.Profile.valueOf(durations);
+            exec = StandInEngines.execution(profile);
+            compiler = StandInEngines.compilation(profile); // fresh engine: SolutionThread runtime starts cold
+            ids = new MethodID[methods];
+            for (int i = 0; i < methods; i++) {
+                ids[i] = new StandInEngines.Method(i);
+            }
+        }
+
+        UserThread newUserThread() {
+            return Strategies.create(strategy, exec, compiler, () -> {
+            });
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PerThread {
+        UserThread user;
+        ZipfSequence sequence;
+        MethodID[] ids;
+
+        @Setup(Level.Trial)
+        public void setUp(Shared shared, ThreadParams thread) {
+            user = shared.newUserThread();
+            ids = shared.ids;
+            sequence = new ZipfSequence(shared.methods, shared.zipf, 1 << 16, 42 + thread.getThreadIndex());
+        }
+
+        ExecutionResult next() {
+            return user.executeMethod(ids[sequence.next()]);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ExecutionResult throughput(PerThread thread) {
+        return thread.next();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public ExecutionResult perCall(PerThread thread) {
+        return thread.next();
+    }
+}
@@ -0,0 +1,187 @@
+package org.nsu.syspro.parprog.jmh;
+
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.solution.JitRuntime;
+import org.nsu.syspro.parprog.solution.OptimizationGoal;
+import org.nsu.syspro.parprog.solution.SolutionThread;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One whole run of a fixed workload per {@link OptimizationGoal}, from a cold JIT to the last call. Every goal targets
+ * its own metric:
+ * <ul>
+ *     <li> score (wall-clock time of the run): {@link OptimizationGoal#WALL_CLOCK}
+ *     <li> {@code hotCallNanos}, CPU time of a call over the last quarter of the run (thread CPU time, so it does not
+ *     depend on how many threads share a core): {@link OptimizationGoal#HOT_PATH}
+ *     <li> {@code cpuMillis}, CPU time of the whole process: {@link OptimizationGoal#CPU_CYCLES}
+ *     <li> {@code codeKiB}, {@link org.nsu.syspro.parprog.solution.CodeCache} footprint at the end:
+ *     {@link OptimizationGoal#RAM_FOOTPRINT}
+ * </ul>
+ * The first three quarters of calls warm up: Zipf-distributed over all {@link #methods}. The last quarter is the steady
+ * state: Zipf-distributed over the {@link #hotMethods} hottest ones. Workloads:
+ * <ul>
+ *     <li> {@code batch}: every thread is busy until its last call, compilation is cheap
+ *     ({@link StandInEngines.Profile#BATCH}). On a single core CPU time is wall-clock time here, so the goal with the
+ *     shortest warm-up wins both.
+ *     <li> {@code service}: every thread waits {@link #SERVICE_PAUSE_MICROS} for I/O after each
+ *     {@link #SERVICE_CALLS_PER_PAUSE} calls and L2 compilation is expensive ({@link StandInEngines.Profile#SERVICE}).
+ *     Compilation runs while threads wait, so it costs CPU time but hardly any wall-clock time.
+ * </ul>
+ * Results on a single core, mean and standard deviation of 10 runs (JMH adds secondary results up over iterations,
+ * per-run values are in the iteration lines), the goal which targets the metric is marked with {@code *}:
+ * <pre>
+ * batch          score, ms   hotCallNanos  cpuMillis  codeKiB
+ * balanced         507 ± 7       478 ± 22   478 ± 8        88
+ * hot-path         500 ± 14     *310 ± 11   470 ± 12      152
+ * wall-clock      *415 ± 8       357 ± 7    390 ± 8       299
+ * cpu-cycles       485 ± 45      381 ± 31   453 ± 43      198
+ * ram-footprint    687 ± 27     2383 ± 18   653 ± 13      *20
+ *
+ * service        score, ms   hotCallNanos  cpuMillis  codeKiB
+ * balanced         654 ± 17      937 ± 12   480 ± 12       88
+ * hot-path         693 ± 9      *760 ± 15   606 ± 13      162
+ * wall-clock       653 ± 50      832 ± 16   500 ± 42      304
+ * cpu-cycles       629 ± 9       968 ± 16  *437 ± 22      166
+ * ram-footprint    723 ± 19     2307 ± 15   551 ± 7       *20
+ * </pre>
+ * Every run gets a fresh compilation engine, i.e. a fresh {@link JitRuntime}. Example:
+ * {@code java -jar target/benchmarks.jar GoalBenchmark -p workload=service}
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GoalBenchmark {
+    static final int SERVICE_CALLS_PER_PAUSE = 1_000;
+    static final long SERVICE_PAUSE_MICROS = 10_000;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Param({"balanced", "hot-path", "wall-clock", "cpu-cycles", "ram-footprint"})
+    public String goal;
+
+    @Param({"batch", "service"})
+    public String workload;
+
+    @Param({"4"})
+    public int threads;
+
+    @Param({"512"})
+    public int methods;
+
+    @Param({"16"})
+    public int hotMethods;
+
+    @Param({"40000"})
+    public int callsPerThread;
+
+    private ExecutionEngine exec;
+    private StandInEngines.Profile profile;
+    private long pauseNanos;
+    private MethodID[] ids;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Metrics {
+        public double hotCallNanos;
+        public long cpuMillis;
+        public long codeKiB;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hotCallNanos = 0;
+            cpuMillis = 0;
+            codeKiB = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (workload) {
+            case "batch":
+                profile = StandInEngines.Profile.BATCH;
+                pauseNanos = 0;
+                break;
+            case "service":
+                profile = StandInEngines.Profile.SERVICE;
+                pauseNanos = TimeUnit.MICROSECONDS.toNanos(SERVICE_PAUSE_MICROS);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown workload: " + workload);
+        }
+        exec = StandInEngines.execution(profile);
+        ids = new MethodID[methods];
+        for (int i = 0; i < methods; i++) {
+            ids[i] = new StandInEngines.Method(i);
+        }
+    }
+
+    private static long processCpuNanos() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return (os instanceof com.sun.management.OperatingSystemMXBean)
+                ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime()
+                : 0;
+    }
+
+    private void call(UserThread self, MethodID id, int i) {
+        self.executeMethod(id);
+        if (pauseNanos != 0 && (i + 1) % SERVICE_CALLS_PER_PAUSE == 0) {
+            LockSupport.parkNanos(pauseNanos);
+        }
+    }
+
+    @Benchmark
+    public void run(Metrics metrics) throws InterruptedException {
+        final OptimizationGoal optimizationGoal = OptimizationGoal.named(goal);
+        final CompilationEngine compiler = StandInEngines.compilation(profile);
+        final int hotFrom = callsPerThread - callsPerThread / 4;
+        final long[] hotNanos = new long[threads];
+        final List<UserThread> users = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            final ZipfSequence warmUp = new ZipfSequence(methods, 0.99, 1 << 16, 42 + t);
+            final ZipfSequence steady = new ZipfSequence(Math.min(hotMethods, methods), 0.99, 1 << 16, 4242 + t);
+            users.add(new SolutionThread(Strategies.COMPILATION_THREAD_BOUND, exec, compiler, () -> {
+                final UserThread self = UserThread.current();
+                for (int i = 0; i < hotFrom; i++) {
+                    call(self, ids[warmUp.next()], i);
+                }
+                // parked time is not CPU time
+                final long start = THREADS.getCurrentThreadCpuTime();
+                for (int i = hotFrom; i < callsPerThread; i++) {
+                    call(self, ids[steady.next()], i);
+                }
+                hotNanos[index] = THREADS.getCurrentThreadCpuTime() - start;
+            }, optimizationGoal));
+        }
+
+        final long cpu = processCpuNanos();
+        for (UserThread user : users) {
+            user.start();
+        }
+        for (UserThread user : users) {
+            user.join();
+        }
+        metrics.cpuMillis += (processCpuNanos() - cpu) / 1_000_000;
+
+        long hot = 0;
+        for (long nanos : hotNanos) {
+            hot += nanos;
+        }
+        metrics.hotCallNanos += (double) hot / ((long) threads * (callsPerThread - hotFrom));
+        metrics.codeKiB += JitRuntime.of(compiler, Strategies.COMPILATION_THREAD_BOUND).cache.footprint() >> 10;
+    }
+}
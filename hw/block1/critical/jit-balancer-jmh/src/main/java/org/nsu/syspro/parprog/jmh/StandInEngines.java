@@ -0,0 +1,172 @@
+package org.nsu.syspro.parprog.jmh;
+
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Execution and compilation engines which only burn the configured time, same knobs as the test harness
+ * ({@code TestEnvironment}): interpretation, L1 execution, L2 execution, L1 compilation, L2 compilation.
+ * <br>
+ * Unlike the harness, durations below a millisecond are busy-waited: {@link Thread#sleep(long, int)} rounds them up to
+ * a whole millisecond and would hide any dispatch overhead.
+ */
+final class StandInEngines {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    enum Profile {
+        // EasyUltraFastTest, MediumTest
+        ULTRA_FAST(Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO),
+        // EasyFastTest
+        FAST(Duration.ofNanos(5), Duration.ofNanos(3), Duration.ofNanos(1), Duration.ofNanos(50), Duration.ofNanos(1_000)),
+        // HardTest
+        HARD(Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ofMillis(10), Duration.ofMillis(100)),
+        // GoalBenchmark batch job: compiled code is much faster than the interpreter, both tiers compile quickly
+        BATCH(Duration.ofNanos(5_000), Duration.ofNanos(500), Duration.ofNanos(100),
+                Duration.ofNanos(500_000), Duration.ofMillis(1), true),
+        // GoalBenchmark service: L2 is an expensive optimizing compiler
+        SERVICE(Duration.ofNanos(4_000), Duration.ofNanos(1_000), Duration.ofNanos(500),
+                Duration.ofNanos(500_000), Duration.ofMillis(20), true);
+
+        final long interpretNanos;
+        final long l1ExecNanos;
+        final long l2ExecNanos;
+        final long l1CompNanos;
+        final long l2CompNanos;
+        /**
+         * Compilation burns CPU time of the compiler thread, as a real compiler does, instead of waiting like the
+         * harness. Needed wherever CPU time is measured.
+         */
+        final boolean cpuBoundCompilation;
+
+        Profile(Duration interpret, Duration l1Exec, Duration l2Exec, Duration l1Comp, Duration l2Comp) {
+            this(interpret, l1Exec, l2Exec, l1Comp, l2Comp, false);
+        }
+
+        Profile(Duration interpret, Duration l1Exec, Duration l2Exec, Duration l1Comp, Duration l2Comp,
+                boolean cpuBoundCompilation) {
+            this.interpretNanos = interpret.toNanos();
+            this.l1ExecNanos = l1Exec.toNanos();
+            this.l2ExecNanos = l2Exec.toNanos();
+            this.l1CompNanos = l1Comp.toNanos();
+            this.l2CompNanos = l2Comp.toNanos();
+            this.cpuBoundCompilation = cpuBoundCompilation;
+        }
+    }
+
+    static final class Result implements ExecutionResult {
+        final int level;
+
+        private Result(int level) {
+            this.level = level;
+        }
+    }
+
+    private static final Result INTERPRETED = new Result(0);
+    private static final Result L1_EXECUTED = new Result(1);
+    private static final Result L2_EXECUTED = new Result(2);
+
+    static final class Code implements CompiledMethod {
+        final MethodID id;
+        final int level;
+
+        Code(MethodID id, int level) {
+            this.id = id;
+            this.level = level;
+        }
+
+        @Override
+        public MethodID id() {
+            return id;
+        }
+    }
+
+    static final class Method implements MethodID {
+        final long id;
+
+        Method(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public long id() {
+            return id;
+        }
+    }
+
+    private StandInEngines() {
+    }
+
+    static void burn(long nanos) {
+        if (nanos == 0) {
+            return;
+        }
+        if (nanos >= 1_000_000) {
+            LockSupport.parkNanos(nanos);
+            return;
+        }
+        final long deadline = System.nanoTime() + nanos;
+        while (System.nanoTime() - deadline < 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Spins until the current thread has used {@code nanos} of CPU time: unlike {@link #burn}, time on the run queue
+     * does not count, so the cost is the same however many threads share a core.
+     */
+    static void work(long nanos) {
+        final long deadline = THREADS.getCurrentThreadCpuTime() + nanos;
+        while (THREADS.getCurrentThreadCpuTime() - deadline < 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void compile(Profile profile, long nanos) {
+        if (profile.cpuBoundCompilation) {
+            work(nanos);
+        } else {
+            burn(nanos);
+        }
+    }
+
+    static ExecutionEngine execution(Profile profile) {
+        return new ExecutionEngine() {
+            @Override
+            public ExecutionResult interpret(MethodID id) {
+                burn(profile.interpretNanos);
+                return INTERPRETED;
+            }
+
+            @Override
+            public ExecutionResult execute(CompiledMethod method) {
+                final Code code = (Code) method;
+                burn((code.level == 1) ? profile.l1ExecNanos : profile.l2ExecNanos);
+                return (code.level == 1) ? L1_EXECUTED : L2_EXECUTED;
+            }
+        };
+    }
+
+    static CompilationEngine compilation(Profile profile) {
+        return new CompilationEngine() {
+            @Override
+            public CompiledMethod compile_l1(MethodID method) {
+                compile(profile, profile.l1CompNanos);
+                return new Code(method, 1);
+            }
+
+            @Override
+            public CompiledMethod compile_l2(MethodID method) {
+                compile(profile, profile.l2CompNanos);
+                return new Code(method, 2);
+            }
+        };
+    }
+}
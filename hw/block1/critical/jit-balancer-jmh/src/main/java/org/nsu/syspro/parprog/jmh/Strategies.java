@@ -0,0 +1,34 @@
+package org.nsu.syspro.parprog.jmh;
+
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.examples.AdaptiveCompiler;
+import org.nsu.syspro.parprog.examples.CachingTopTierJIT;
+import org.nsu.syspro.parprog.examples.Interpreter;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.solution.SolutionThread;
+
+/**
+ * {@link UserThread} implementations under measurement, by simple class name.
+ */
+final class Strategies {
+    static final int COMPILATION_THREAD_BOUND = 3;
+
+    private Strategies() {
+    }
+
+    static UserThread create(String strategy, ExecutionEngine exec, CompilationEngine compiler, Runnable r) {
+        switch (strategy) {
+            case "Interpreter":
+                return new Interpreter(COMPILATION_THREAD_BOUND, exec, compiler, r);
+            case "AdaptiveCompiler":
+                return new AdaptiveCompiler(COMPILATION_THREAD_BOUND, exec, compiler, r);
+            case "CachingTopTierJIT":
+                return new CachingTopTierJIT(COMPILATION_THREAD_BOUND, exec, compiler, r);
+            case "SolutionThread":
+                return new SolutionThread(COMPILATION_THREAD_BOUND, exec, compiler, r);
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+    }
+}
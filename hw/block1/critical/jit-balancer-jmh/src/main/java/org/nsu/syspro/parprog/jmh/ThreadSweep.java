@@ -0,0 +1,34 @@
+package org.nsu.syspro.parprog.jmh;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link DispatchBenchmark} once per thread count, JMH itself has no thread count dimension.
+ * <br>
+ * Usage: {@code ThreadSweep 1,4,16 [usual JMH options]}
+ */
+public final class ThreadSweep {
+    private ThreadSweep() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final String counts = (args.length > 0) ? args[0] : "1,4,16";
+        final String[] jmhArgs = new String[Math.max(0, args.length - 1)];
+        System.arraycopy(args, Math.min(1, args.length), jmhArgs, 0, jmhArgs.length);
+        final CommandLineOptions cmd = new CommandLineOptions(jmhArgs);
+
+        for (String count : counts.split(",")) {
+            final OptionsBuilder options = new OptionsBuilder();
+            options.parent(cmd);
+            if (cmd.getIncludes().isEmpty()) {
+                options.include(DispatchBenchmark.class.getSimpleName());
+            }
+            options.threads(Integer.parseInt(count.trim()));
+            new Runner(options.build()).run();
+        }
+    }
+}
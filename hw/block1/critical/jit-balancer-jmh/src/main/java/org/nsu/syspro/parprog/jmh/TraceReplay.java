@@ -0,0 +1,101 @@
+package org.nsu.syspro.parprog.jmh;
+
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.solution.LongIntTable;
+import org.nsu.syspro.parprog.solution.TraceReader;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a trace recorded with {@code -Djit.trace=<file>} (see {@link org.nsu.syspro.parprog.solution.TraceRecorder})
+ * against any {@link UserThread} implementation and {@link StandInEngines} profile. Every recorded thread is replayed by
+ * its own {@link UserThread}, calls keep their per-thread order.
+ * <br>
+ * Usage: {@code TraceReplay <trace> [strategy=SolutionThread] [profile=FAST] [--paced]}. Paced replay keeps recorded
+ * timestamps, otherwise calls are issued as fast as possible.
+ */
+public final class TraceReplay {
+    private TraceReplay() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: TraceReplay <trace> [strategy=SolutionThread] [profile=FAST] [--paced]");
+            System.exit(2);
+        }
+        final TraceReader reader = new TraceReader(Paths.get(args[0]));
+        final String strategy = (args.length > 1) ? args[1] : "SolutionThread";
+        final StandInEngines.Profile profile = StandInEngines.Profile.valueOf((args.length > 2) ? args[2] : "FAST");
+        final boolean paced = args.length > 3 && args[3].equals("--paced");
+
+        final long[] levels = replay(reader, strategy, StandInEngines.execution(profile),
+                StandInEngines.compilation(profile), paced);
+        final long calls = levels[0] + levels[1] + levels[2];
+        System.out.printf("%s/%s: %d threads, %d calls in %.1f ms (%.0f calls/s), interpreted %d, L1 %d, L2 %d%n",
+                strategy, profile, reader.threads().size(), calls, levels[3] / 1e6, calls * 1e9 / levels[3],
+                levels[0], levels[1], levels[2]);
+    }
+
+    /**
+     * @return number of calls executed at every level (interpreted, L1, L2) and elapsed nanoseconds
+     */
+    static long[] replay(TraceReader reader, String strategy, ExecutionEngine exec, CompilationEngine compiler,
+                         boolean paced) throws InterruptedException {
+        final List<UserThread> threads = new ArrayList<>();
+        final List<long[]> counters = new ArrayList<>();
+        final long[] start = new long[1];
+        for (long threadId : reader.threads()) {
+            final TraceReader.Cursor cursor = reader.cursor(threadId);
+            final long[] levels = new long[3];
+            counters.add(levels);
+            threads.add(Strategies.create(strategy, exec, compiler, () -> {
+                final UserThread self = UserThread.current();
+                // MethodID objects are created once per method, the loop only decodes and dispatches
+                final LongIntTable index = new LongIntTable();
+                final ArrayList<MethodID> methods = new ArrayList<>();
+                while (cursor.next()) {
+                    if (paced) {
+                        final long delay = start[0] + cursor.nanos() - System.nanoTime();
+                        if (delay > 0) {
+                            LockSupport.parkNanos(delay);
+                        }
+                    }
+                    final long id = cursor.methodId();
+                    int i = index.get(id, -1);
+                    if (i < 0) {
+                        i = methods.size();
+                        methods.add(new StandInEngines.Method(id));
+                        index.put(id, i);
+                    }
+                    final StandInEngines.Result result = (StandInEngines.Result) self.executeMethod(methods.get(i));
+                    levels[result.level]++;
+                }
+            }));
+        }
+
+        start[0] = System.nanoTime();
+        for (UserThread thread : threads) {
+            thread.start();
+        }
+        for (UserThread thread : threads) {
+            thread.join();
+        }
+        final long elapsed = System.nanoTime() - start[0];
+
+        final long[] total = new long[4];
+        for (long[] levels : counters) {
+            for (int level = 0; level < levels.length; level++) {
+                total[level] += levels[level];
+            }
+        }
+        total[3] = elapsed;
+        return total;
+    }
+}
@@ -0,0 +1,118 @@
+package org.nsu.syspro.parprog.jmh;
+
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.solution.SolutionThread;
+import org.nsu.syspro.parprog.solution.VirtualUserThreads;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link #tasks} concurrent user tasks of {@link #invocations} calls each against the same {@link ExecutionEngine},
+ * started on virtual threads ({@link VirtualUserThreads}) or as usual. Engines are instant, so the score is the cost of
+ * starting the threads and dispatching their calls. Virtual threads need Java 21+, older runtimes run both modes on
+ * platform threads. Every call is checked to happen in the thread of its {@link UserThread}. Example:
+ * {@code java -jar target/benchmarks.jar VirtualThreadsBenchmark}
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadsBenchmark {
+    @Param({"virtual", "platform"})
+    public String threads;
+
+    @Param({"100000"})
+    public int tasks;
+
+    @Param({"100"})
+    public int invocations;
+
+    private static final ExecutionResult RESULT = new ExecutionResult() {
+    };
+
+    private final ThreadLocal<UserThread> bound = new ThreadLocal<>();
+    private final AtomicInteger violations = new AtomicInteger(0);
+    private ExecutionEngine exec;
+    private CompilationEngine compiler;
+    private MethodID[] methods;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        exec = new ExecutionEngine() {
+            @Override
+            public ExecutionResult interpret(MethodID id) {
+                check();
+                return RESULT;
+            }
+
+            @Override
+            public ExecutionResult execute(CompiledMethod method) {
+                check();
+                return RESULT;
+            }
+        };
+        compiler = new CompilationEngine() {
+            @Override
+            public CompiledMethod compile_l1(MethodID method) {
+                return new StandInEngines.Code(method, 1);
+            }
+
+            @Override
+            public CompiledMethod compile_l2(MethodID method) {
+                return new StandInEngines.Code(method, 2);
+            }
+        };
+        methods = new MethodID[16];
+        for (int i = 0; i < methods.length; i++) {
+            methods[i] = new StandInEngines.Method(i);
+        }
+    }
+
+    private void check() {
+        final UserThread current = UserThread.current();
+        if (bound.get() == null) {
+            bound.set(current);
+        } else if (bound.get() != current) {
+            violations.incrementAndGet();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void verify() {
+        if (violations.get() != 0) {
+            throw new IllegalStateException(violations.get() + " calls left their user thread");
+        }
+    }
+
+    @Benchmark
+    public void run() throws InterruptedException {
+        final boolean virtual = threads.equals("virtual");
+        final Thread[] started = new Thread[tasks];
+        for (int t = 0; t < tasks; t++) {
+            final var user = new SolutionThread(2, exec, compiler, () -> {
+                final UserThread self = UserThread.current();
+                for (int i = 0; i < invocations; i++) {
+                    self.executeMethod(methods[i % methods.length]);
+                }
+            });
+            if (virtual) {
+                started[t] = VirtualUserThreads.start(user);
+            } else {
+                user.start();
+                started[t] = user;
+            }
+        }
+        for (Thread thread : started) {
+            thread.join();
+        }
+    }
+}
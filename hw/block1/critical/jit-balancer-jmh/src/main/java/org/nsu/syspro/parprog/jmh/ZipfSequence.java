@@ -0,0 +1,37 @@
+package org.nsu.syspro.parprog.jmh;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Pre-generated sequence of method indices with Zipf-skewed popularity: index {@code k} (0-based) is drawn with
+ * probability proportional to {@code 1 / (k + 1)^exponent}. Exponent {@code 0} is the uniform distribution.
+ * <br>
+ * Generated once per benchmark thread, so the measured loop only reads an array.
+ */
+final class ZipfSequence {
+    private final int[] indices;
+    private final int mask;
+    private int cursor;
+
+    ZipfSequence(int methods, double exponent, int length, long seed) {
+        assert methods > 0 && exponent >= 0 && Integer.bitCount(length) == 1;
+        final double[] cdf = new double[methods];
+        double sum = 0;
+        for (int k = 0; k < methods; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        final SplittableRandom random = new SplittableRandom(seed);
+        this.indices = new int[length];
+        for (int i = 0; i < length; i++) {
+            final int found = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            indices[i] = Math.min(methods - 1, (found >= 0) ? found : -found - 1);
+        }
+        this.mask = length - 1;
+    }
+
+    int next() {
+        return indices[cursor++ & mask];
+    }
+}
@@ -2,6 +2,7 @@ package org.nsu.syspro.parprog;
 
 import org.nsu.syspro.parprog.examples.AdaptiveCompiler;
 import org.nsu.syspro.parprog.examples.CachingTopTierJIT;
+import org.nsu.syspro.parprog.examples.InlineCachingJIT;
 import org.nsu.syspro.parprog.examples.Interpreter;
 import org.nsu.syspro.parprog.external.CompilationEngine;
 import org.nsu.syspro.parprog.external.ExecutionEngine;
@@ -19,7 +20,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * <br>
  * Intended usage: inherit from {@link UserThread}, add any additional fields for your convenience, implement {@link #executeMethod(MethodID)}.
  * <br>
- * Look at {@link Interpreter}, {@link AdaptiveCompiler}, {@link CachingTopTierJIT} for reference.
+ * Look at {@link Interpreter}, {@link AdaptiveCompiler}, {@link CachingTopTierJIT}, {@link InlineCachingJIT} for reference.
  * <br>
  * Write your solution in {@link SolutionThread}.
  */
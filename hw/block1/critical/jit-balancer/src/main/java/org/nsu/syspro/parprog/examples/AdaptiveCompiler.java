@@ -10,9 +10,35 @@ import java.util.Map;
  * Solution that tries to detect "hot" methods and compile them by l1 JIT.
  */
 public final class AdaptiveCompiler extends UserThread {
+    /**
+     * Decides when an interpreted method is hot enough for l1 JIT, so the threshold can be tuned without overriding
+     * {@link #executeMethod}. The example never uses l2 JIT, see {@code solution.TieredPolicy} for a full tiered one.
+     */
+    @FunctionalInterface
+    public interface TieredPolicy {
+        /**
+         * @param hotLevel number of previous interpretations of the method by this thread
+         */
+        boolean shouldCompileL1(long hotLevel);
+    }
+
+    /**
+     * Compile by l1 JIT after this many interpretations.
+     */
+    public static final long HOT_LEVEL = 9_000;
+
+    public static final TieredPolicy DEFAULT_POLICY = hotLevel -> hotLevel > HOT_LEVEL;
+
+    private final TieredPolicy policy;
 
     public AdaptiveCompiler(int compilationThreadBound, ExecutionEngine exec, CompilationEngine compiler, Runnable r) {
+        this(compilationThreadBound, exec, compiler, r, DEFAULT_POLICY);
+    }
+
+    public AdaptiveCompiler(int compilationThreadBound, ExecutionEngine exec, CompilationEngine compiler, Runnable r,
+                            TieredPolicy policy) {
         super(compilationThreadBound, exec, compiler, r);
+        this.policy = policy;
     }
 
     private final Map<Long, Long> hotness = new HashMap<>();
@@ -23,7 +49,7 @@ public final class AdaptiveCompiler extends UserThread {
         final long hotLevel = hotness.getOrDefault(methodID, 0L);
         hotness.put(methodID, hotLevel + 1);
 
-        if (hotLevel > 9_000) {
+        if (policy.shouldCompileL1(hotLevel)) {
             final CompiledMethod code = compiler.compile_l1(id);
             return exec.execute(code);
         }
@@ -0,0 +1,131 @@
+package org.nsu.syspro.parprog.examples;
+
+import org.nsu.syspro.parprog.external.*;
+import org.nsu.syspro.parprog.UserThread;
+
+/**
+ * {@link CachingTopTierJIT} with a small polymorphic inline cache instead of a single slot: N-way set-associative,
+ * tree pseudo-LRU replacement inside every set.
+ * <br>
+ * Lookup hashes {@link MethodID#id()} to a set and compares at most {@code ways} ids, no map is touched. A working set
+ * which fits into the cache is compiled exactly once per method, e.g. two alternating methods never thrash.
+ * <br>
+ * Weak point: still compiles on the user thread with the top tier, same as {@link CachingTopTierJIT}.
+ */
+public final class InlineCachingJIT extends UserThread {
+    public static final int DEFAULT_SETS = 2;
+    public static final int DEFAULT_WAYS = 4;
+
+    private static final int MISSES_BEFORE_COMPILATION = 10;
+
+    // thread-private data, accessed from `executeMethod` only
+    private final int setMask;
+    private final int ways;
+    private final int levels; // depth of pseudo-LRU tree
+    private final long[] ids;
+    private final CompiledMethod[] code; // null marks an empty way
+    private final int[] plru; // one tree of `ways - 1` bits per set, node `n` is bit `n` (root is 1)
+
+    private int misses = 0;
+    private long compilations = 0;
+
+    public InlineCachingJIT(int compilationThreadBound, ExecutionEngine exec, CompilationEngine compiler, Runnable r) {
+        this(compilationThreadBound, exec, compiler, r, DEFAULT_SETS, DEFAULT_WAYS);
+    }
+
+    public InlineCachingJIT(int compilationThreadBound, ExecutionEngine exec, CompilationEngine compiler, Runnable r,
+                            int sets, int ways) {
+        super(compilationThreadBound, exec, compiler, r);
+        if (Integer.bitCount(sets) != 1 || Integer.bitCount(ways) != 1 || ways > 16) {
+            throw new IllegalArgumentException("Sets and ways must be powers of two, ways <= 16: " + sets + "x" + ways);
+        }
+        this.setMask = sets - 1;
+        this.ways = ways;
+        this.levels = Integer.numberOfTrailingZeros(ways);
+        this.ids = new long[sets * ways];
+        this.code = new CompiledMethod[sets * ways];
+        this.plru = new int[sets];
+    }
+
+    @Override
+    public ExecutionResult executeMethod(MethodID id) {
+        final long key = id.id();
+        final int set = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & setMask;
+        final int base = set * ways;
+        for (int way = 0; way < ways; way++) {
+            final CompiledMethod cached = code[base + way];
+            if (cached != null && ids[base + way] == key) {
+                touch(set, way);
+                return exec.execute(cached);
+            }
+        }
+
+        misses++;
+        if (misses <= MISSES_BEFORE_COMPILATION && !hasEmptyWay(base)) {
+            return exec.interpret(id);
+        }
+
+        misses = 0;
+        compilations++;
+        final CompiledMethod compiled = compiler.compile_l2(id);
+        final int way = victim(set, base);
+        ids[base + way] = key;
+        code[base + way] = compiled;
+        touch(set, way);
+        return exec.execute(compiled);
+    }
+
+    /**
+     * @return number of {@code compile_l2} calls made by this thread
+     */
+    public long compilations() {
+        return compilations;
+    }
+
+    private boolean hasEmptyWay(int base) {
+        for (int way = 0; way < ways; way++) {
+            if (code[base + way] == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Turns every node on the path to {@code way} away from it.
+     */
+    private void touch(int set, int way) {
+        int bits = plru[set];
+        int node = 1;
+        for (int level = levels - 1; level >= 0; level--) {
+            final int right = (way >>> level) & 1;
+            if (right == 1) {
+                bits &= ~(1 << node);
+            } else {
+                bits |= 1 << node;
+            }
+            node = 2 * node + right;
+        }
+        plru[set] = bits;
+    }
+
+    /**
+     * @return an empty way if any, otherwise the way all nodes point to
+     */
+    private int victim(int set, int base) {
+        for (int way = 0; way < ways; way++) {
+            if (code[base + way] == null) {
+                return way;
+            }
+        }
+        final int bits = plru[set];
+        int node = 1;
+        int way = 0;
+        for (int level = 0; level < levels; level++) {
+            final int right = (bits >>> node) & 1;
+            way = (way << 1) | right;
+            node = 2 * node + right;
+        }
+        return way;
+    }
+}
@@ -1,5 +1,8 @@
 package org.nsu.syspro.parprog.external;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Abstraction of compilation engine of some Virtual Machine featuring Just-In-Time (JIT) compilation.
  * This interface support multi-level (multi-tier) compilation:
@@ -22,4 +25,30 @@ public interface CompilationEngine {
     CompiledMethod compile_l1(MethodID method);
 
     CompiledMethod compile_l2(MethodID method);
+
+    /**
+     * Compiles several methods by the same JIT level at once, which lets an engine amortize per-compilation fixed costs.
+     * Same thread-safety guarantees as single-method compilation. Default implementation compiles methods one by one.
+     *
+     * @param level 1 for {@link #compile_l1(MethodID)}, 2 for {@link #compile_l2(MethodID)}
+     * @return compiled methods in the order of {@code methods}
+     */
+    default List<CompiledMethod> compile_batch(List<MethodID> methods, int level) {
+        if (level != 1 && level != 2) {
+            throw new IllegalArgumentException("Unknown JIT level: " + level);
+        }
+        final List<CompiledMethod> result = new ArrayList<>(methods.size());
+        for (MethodID method : methods) {
+            result.add((level == 1) ? compile_l1(method) : compile_l2(method));
+        }
+        return result;
+    }
+
+    /**
+     * @return {@code true} if {@link #compile_batch} is cheaper than compiling the same methods one by one. The default
+     * implementation is not, so callers gain nothing from batching and only delay all methods but the last one.
+     */
+    default boolean supportsBatch() {
+        return false;
+    }
 }
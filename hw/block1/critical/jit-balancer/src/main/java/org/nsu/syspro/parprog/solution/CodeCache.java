@@ -0,0 +1,225 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.nsu.syspro.parprog.external.CompiledMethod;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Global cache of compiled code shared by all {@link org.nsu.syspro.parprog.UserThread}s, keyed by primitive
+ * {@link org.nsu.syspro.parprog.external.MethodID#id()}.
+ * <br>
+ * {@link #lookup(long)} never blocks, so it could be used at the very beginning of `executeMethod`
+ * (`Weak-worst-case-latency`). {@link #publish} only moves an entry up: L1 code is replaced by L2 code,
+ * L2 code is never replaced by L1 code.
+ * <br>
+ * Every change also produces a new immutable {@link CodeSnapshot}. User threads read {@link #snapshot()} once per
+ * invocation and consult it only when its version changed (RCU-style): nothing on their path can be blocked by a writer.
+ * Writers are compiler threads, they are serialized by a lock.
+ * <br>
+ * Memory is bounded by a budget in notional bytes ({@link #L1_FOOTPRINT}, {@link #L2_FOOTPRINT} per method).
+ * When the budget is exceeded, cold L1 code is evicted by CLOCK (second chance):
+ * <ul>
+ *     <li> An entry is referenced if {@link MethodState#globalHotness()} grew since the hand passed it last time,
+ *     so user threads pay nothing for the reference bit.
+ *     <li> Eviction moves the method back to {@link MethodState#NEVER_COMPILED} ({@link MethodState#evictL1()}),
+ *     it is allowed only while the method still has a spare {@code compile_l1} (`CPU-bound-compilation`).
+ *     <li> Evicted key stays in the table with a tombstone value: keys are bounded by `Limited-methods`, code is not.
+ *     <li> Threads which already hold evicted code keep using it (`Per-thread-monotonicity`), new threads recompile it.
+ * </ul>
+ * Weak point: L2 code and L1 code without spare compilations are pinned, so the budget is soft. The budget is also
+ * notional: evicted code is actually freed only when no thread references it anymore.
+ */
+public final class CodeCache {
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+    public static final long L1_FOOTPRINT = 4 << 10;
+    public static final long L2_FOOTPRINT = 16 << 10;
+
+    private final long budget;
+    private final ConcurrentLongTable<TieredCode> table = new ConcurrentLongTable<>();
+    private volatile CodeSnapshot snapshot = CodeSnapshot.EMPTY;
+
+    // guarded by writeLock
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ArrayList<MethodState> clock = new ArrayList<>();
+    private int hand;
+    private volatile long footprint;
+    private volatile long evictions;
+
+    public CodeCache() {
+        this(UNBOUNDED);
+    }
+
+    public CodeCache(long budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Code cache budget must be positive: " + budget);
+        }
+        this.budget = budget;
+    }
+
+    public static long footprint(int tier) {
+        switch (tier) {
+            case TieredCode.L1:
+                return L1_FOOTPRINT;
+            case TieredCode.L2:
+                return L2_FOOTPRINT;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return best known code for method {@code id} or {@code null} if it was never published or was evicted
+     */
+    public TieredCode lookup(long id) {
+        final TieredCode code = table.get(id);
+        return (code == TieredCode.EVICTED) ? null : code;
+    }
+
+    /**
+     * Publishes {@code code} unless code of the same or higher tier is already available. Such code is never evicted.
+     *
+     * @return best code for this method after the call (either {@code code} or a better one published concurrently)
+     */
+    public TieredCode publish(CompiledMethod code, int tier) {
+        return publish(null, code, tier);
+    }
+
+    /**
+     * Same as {@link #publish(CompiledMethod, int)}, but L1 code may be evicted later under memory pressure.
+     * Must be called before {@link MethodState#completeL1()}/{@link MethodState#completeL2()}.
+     *
+     * @return {@code null} if the method was invalidated while it was compiled, the code is dropped then
+     */
+    public TieredCode publish(MethodState state, CompiledMethod code, int tier) {
+        assert state == null || state.id == code.id().id();
+        final long id = code.id().id();
+        writeLock.lock();
+        try {
+            if (state != null && MethodState.stale(state.word())) {
+                return null;
+            }
+            final TieredCode best = publishToTable(id, new TieredCode(code, tier));
+            sync(id);
+            if (state != null && !state.inClock) {
+                state.inClock = true;
+                state.clockHotness = -1; // fresh entries are referenced
+                clock.add(state);
+            }
+            evict();
+            return best;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Single volatile read.
+     *
+     * @return the latest {@link CodeSnapshot}
+     */
+    public CodeSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return number of methods with compiled code
+     */
+    public int size() {
+        return snapshot.size();
+    }
+
+    public long budget() {
+        return budget;
+    }
+
+    /**
+     * @return notional size of all cached code
+     */
+    public long footprint() {
+        return footprint;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Drops all code of the method from the cache and lets it be compiled again, see {@link Deoptimizer}. Threads which
+     * already hold the code are not affected.
+     */
+    void invalidate(MethodState state) {
+        writeLock.lock();
+        try {
+            // state first: a thread which sees the method ready must find its code
+            state.invalidate();
+            final TieredCode code = table.get(state.id);
+            if (code != null && code != TieredCode.EVICTED) {
+                final boolean replaced = table.replace(state.id, code, TieredCode.EVICTED);
+                assert replaced : "writers hold writeLock";
+                sync(state.id);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private TieredCode publishToTable(long id, TieredCode update) {
+        while (true) {
+            final TieredCode current = table.putIfAbsent(id, update);
+            if (current == null) {
+                return update;
+            }
+            if (current.tier >= update.tier) {
+                return current;
+            }
+            if (table.replace(id, current, update)) {
+                return update;
+            }
+        }
+    }
+
+    /**
+     * Makes the snapshot agree with the table for method {@code id}.
+     */
+    private void sync(long id) {
+        assert writeLock.isHeldByCurrentThread();
+        final TieredCode current = lookup(id);
+        final CodeSnapshot old = snapshot;
+        final TieredCode previous = old.lookup(id);
+        final CodeSnapshot next = old.with(id, current);
+        if (next != old) {
+            footprint += footprint(tier(current)) - footprint(tier(previous));
+            snapshot = next;
+        }
+    }
+
+    private static int tier(TieredCode code) {
+        return (code == null) ? TieredCode.INTERPRETED : code.tier;
+    }
+
+    /**
+     * CLOCK sweep, at most two full turns: the first one may only clear reference bits.
+     */
+    private void evict() {
+        for (int steps = 2 * clock.size(); footprint > budget && steps > 0; steps--) {
+            if (hand >= clock.size()) {
+                hand = 0;
+            }
+            final MethodState state = clock.get(hand++);
+            final TieredCode code = table.get(state.id);
+            if (code == null || code.tier != TieredCode.L1) {
+                continue; // L2 code is pinned: it is never compiled again
+            }
+            final long hotness = state.globalHotness();
+            if (hotness != state.clockHotness) {
+                state.clockHotness = hotness; // second chance
+                continue;
+            }
+            if (state.evictL1() && table.replace(state.id, code, TieredCode.EVICTED)) {
+                sync(state.id);
+                evictions++;
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.nsu.syspro.parprog.solution;
+
+/**
+ * Immutable versioned map from method id to the best published {@link TieredCode} (read-copy-update).
+ * <br>
+ * Readers get a snapshot with a single volatile read ({@link CodeCache#snapshot()}) and then look methods up with plain
+ * reads of final arrays: lookup is wait-free and never contends with writers. Writers (compiler threads) are serialized
+ * by {@link CodeCache} and copy the whole snapshot. Copying is {@code O(methods)}, but it happens only on publication or
+ * eviction of compiled code, i.e. a few times per method (`CPU-bound-compilation`).
+ */
+public final class CodeSnapshot {
+    static final CodeSnapshot EMPTY = new CodeSnapshot(0, new long[8], new TieredCode[8], 0);
+
+    public final long version;
+    private final long[] keys;
+    private final TieredCode[] values; // null marks an empty slot
+    private final int size;
+
+    private CodeSnapshot(long version, long[] keys, TieredCode[] values, int size) {
+        assert keys.length == values.length && Integer.bitCount(keys.length) == 1;
+        this.version = version;
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    private static int indexOf(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Wait-free.
+     *
+     * @return best code of method {@code id} at the moment of this snapshot or {@code null}
+     */
+    public TieredCode lookup(long id) {
+        final int mask = keys.length - 1;
+        for (int i = indexOf(id, mask); ; i = (i + 1) & mask) {
+            final TieredCode v = values[i];
+            if (v == null) {
+                return null;
+            }
+            if (keys[i] == id) {
+                return v;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return next version where method {@code id} maps to {@code code} (removed if {@code null}),
+     * or {@code this} if nothing changes
+     */
+    CodeSnapshot with(long id, TieredCode code) {
+        final TieredCode existing = lookup(id);
+        if (existing == code) {
+            return this;
+        }
+        final int newSize = size + ((existing == null) ? 1 : 0) - ((code == null) ? 1 : 0);
+        final int capacity = (newSize * 2 > keys.length) ? keys.length * 2 : keys.length;
+        final long[] newKeys = new long[capacity];
+        final TieredCode[] newValues = new TieredCode[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null && keys[i] != id) {
+                insert(newKeys, newValues, keys[i], values[i]);
+            }
+        }
+        if (code != null) {
+            insert(newKeys, newValues, id, code);
+        }
+        return new CodeSnapshot(version + 1, newKeys, newValues, newSize);
+    }
+
+    private static void insert(long[] keys, TieredCode[] values, long key, TieredCode value) {
+        final int mask = keys.length - 1;
+        int i = indexOf(key, mask);
+        while (values[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+}
@@ -0,0 +1,36 @@
+package org.nsu.syspro.parprog.solution;
+
+/**
+ * Global registry of {@link MethodState}s keyed by primitive {@link org.nsu.syspro.parprog.external.MethodID#id()}.
+ * Both lookup and registration are lock-free, so it is safe to use from `executeMethod`.
+ */
+public final class CompilationStates {
+    private final ConcurrentLongTable<MethodState> table = new ConcurrentLongTable<>();
+
+    /**
+     * @return state of method {@code id} or {@code null} if nobody asked about it yet
+     */
+    public MethodState peek(long id) {
+        return table.get(id);
+    }
+
+    /**
+     * @return the only {@link MethodState} of method {@code id}, registering it if needed
+     */
+    public MethodState of(long id) {
+        final MethodState existing = table.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        final MethodState fresh = new MethodState(id);
+        final MethodState raced = table.putIfAbsent(id, fresh);
+        return (raced == null) ? fresh : raced;
+    }
+
+    /**
+     * Weakly consistent traversal of all registered states, see {@link ConcurrentLongTable#forEach}.
+     */
+    void forEach(ConcurrentLongTable.Visitor<MethodState> visitor) {
+        table.forEach(visitor);
+    }
+}
@@ -0,0 +1,142 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compile queue ordered by global hotness with aging.
+ * <br>
+ * Producers ({@link org.nsu.syspro.parprog.UserThread}s) only append to a lock-free inbox. Consumers (compiler threads)
+ * move the inbox into a private backlog under {@link #lock} and take the request with the highest
+ * {@link #priority(CompileRequest, long)}: {@link MethodState#globalHotness()} plus {@link MethodState#heat()} plus a bonus
+ * which grows with the time spent in the queue, so cold requests can not starve forever.
+ * <br>
+ * Heat keeps changing while a request waits, so there is no heap: every {@link #poll(long)} scans the backlog.
+ * The backlog is bounded by the broker capacity and a scan is much cheaper than any compilation.
+ */
+final class CompileQueue {
+    private final ConcurrentLinkedQueue<CompileRequest> inbox = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock lock = new ReentrantLock(); // compiler threads only
+    private final ArrayList<CompileRequest> backlog = new ArrayList<>();
+    private final long agingPerMilli;
+
+    /**
+     * @param agingPerMilli heat bonus for every millisecond spent in the queue
+     */
+    CompileQueue(long agingPerMilli) {
+        assert agingPerMilli > 0;
+        this.agingPerMilli = agingPerMilli;
+    }
+
+    void offer(CompileRequest request) {
+        inbox.offer(request);
+    }
+
+    long priority(CompileRequest request, long nowNanos) {
+        final long waitedNanos = Math.max(0, nowNanos - request.enqueuedNanos);
+        return request.state.globalHotness() + request.state.heat() + (waitedNanos / 1_000_000) * agingPerMilli;
+    }
+
+    /**
+     * @return the most valuable request or {@code null} if queue is empty
+     */
+    CompileRequest poll(long nowNanos) {
+        lock.lock();
+        try {
+            drainInbox();
+            return backlog.isEmpty() ? null : take(nowNanos, -1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int pollBatch(long nowNanos, int max, ArrayList<CompileRequest> out) {
+        return pollBatch(nowNanos, max, -1, out);
+    }
+
+    /**
+     * Takes the most valuable request of {@code preferredTier} (of any tier if there is none or it is negative) and up
+     * to {@code max - 1} next most valuable requests of the same tier. A request of another tier which blocks a user
+     * thread ({@link SolutionThread#BLOCKED_HEAT}) is never overtaken: the preference is ignored while there is one.
+     *
+     * @return number of requests added to {@code out}
+     */
+    int pollBatch(long nowNanos, int max, int preferredTier, ArrayList<CompileRequest> out) {
+        assert max > 0;
+        lock.lock();
+        try {
+            drainInbox();
+            if (backlog.isEmpty()) {
+                return 0;
+            }
+            CompileRequest first = (preferredTier < 0 || blockedOtherThan(preferredTier)) ? null
+                    : take(nowNanos, preferredTier);
+            if (first == null) {
+                first = take(nowNanos, -1);
+            }
+            out.add(first);
+            int taken = 1;
+            while (taken < max) {
+                final CompileRequest next = take(nowNanos, first.tier);
+                if (next == null) {
+                    break;
+                }
+                out.add(next);
+                taken++;
+            }
+            return taken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean blockedOtherThan(int tier) {
+        for (int i = 0; i < backlog.size(); i++) {
+            final CompileRequest r = backlog.get(i);
+            if (r.tier != tier && r.state.heat() >= SolutionThread.BLOCKED_HEAT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drainInbox() {
+        assert lock.isHeldByCurrentThread();
+        for (CompileRequest r = inbox.poll(); r != null; r = inbox.poll()) {
+            backlog.add(r);
+        }
+    }
+
+    /**
+     * Removes the request with the highest priority among requests of {@code tier} (any tier if negative).
+     */
+    private CompileRequest take(long nowNanos, int tier) {
+        int best = -1;
+        long bestPriority = Long.MIN_VALUE;
+        for (int i = 0; i < backlog.size(); i++) {
+            final CompileRequest r = backlog.get(i);
+            if (tier >= 0 && r.tier != tier) {
+                continue;
+            }
+            final long p = priority(r, nowNanos);
+            if (best < 0 || p > bestPriority) {
+                best = i;
+                bestPriority = p;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        final CompileRequest result = backlog.get(best);
+        final CompileRequest last = backlog.remove(backlog.size() - 1);
+        if (best < backlog.size()) {
+            backlog.set(best, last);
+        }
+        return result;
+    }
+
+    CompileRequest poll() {
+        return poll(System.nanoTime());
+    }
+}
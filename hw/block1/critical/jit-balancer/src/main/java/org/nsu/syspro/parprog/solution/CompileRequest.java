@@ -0,0 +1,78 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.nsu.syspro.parprog.external.MethodID;
+
+/**
+ * Permission to compile {@link #method} by JIT level {@link #tier}, obtained by winning
+ * {@link MethodState#tryQueueL1()} or {@link MethodState#tryQueueL2()}.
+ */
+public final class CompileRequest {
+    public final MethodID method;
+    public final MethodState state;
+    public final int tier;
+    public final long enqueuedNanos;
+    public final int upTo; // tier to request right after this one is compiled, see CompilerBroker#prefetch
+
+    public CompileRequest(MethodID method, MethodState state, int tier) {
+        this(method, state, tier, tier);
+    }
+
+    public CompileRequest(MethodID method, MethodState state, int tier, int upTo) {
+        this(method, state, tier, upTo, System.nanoTime());
+    }
+
+    private CompileRequest(MethodID method, MethodState state, int tier, int upTo, long enqueuedNanos) {
+        assert method.id() == state.id;
+        assert tier == TieredCode.L1 || tier == TieredCode.L2;
+        assert tier <= upTo && upTo <= TieredCode.L2;
+        this.method = method;
+        this.state = state;
+        this.tier = tier;
+        this.upTo = upTo;
+        this.enqueuedNanos = enqueuedNanos;
+    }
+
+    /**
+     * Turns a queued L1 request into an L2 one, see {@link MethodState#tryUpgradeL1ToL2()}.
+     *
+     * @return L2 request which keeps the place in the queue, or {@code null} if L2 is not allowed
+     */
+    CompileRequest tryUpgradeToL2() {
+        assert tier == TieredCode.L1;
+        return state.tryUpgradeL1ToL2()
+                ? new CompileRequest(method, state, TieredCode.L2, TieredCode.L2, enqueuedNanos)
+                : null;
+    }
+
+    void complete() {
+        if (tier == TieredCode.L1) {
+            state.completeL1();
+        } else {
+            state.completeL2();
+        }
+    }
+
+    /**
+     * The engine threw on this request, see {@link MethodState#failL1()}.
+     */
+    void fail() {
+        if (tier == TieredCode.L1) {
+            state.failL1();
+        } else {
+            state.failL2();
+        }
+    }
+
+    void cancel() {
+        if (tier == TieredCode.L1) {
+            state.cancelL1();
+        } else {
+            state.cancelL2();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompileRequest(%d, L%d)", method.id(), tier);
+    }
+}
@@ -0,0 +1,457 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.MethodID;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Owner of every {@link CompilationEngine#compile_l1} and {@link CompilationEngine#compile_l2} call.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> {@link org.nsu.syspro.parprog.UserThread}s only {@link #submit} requests. Submission is lock-free
+ *     ({@link CompileQueue#offer} + {@link Semaphore#release()}) and never waits for free space: a full queue rejects the
+ *     request and the caller gives its permission back ({@link CompileRequest#cancel()}).
+ *     <li> Compiler threads take the hottest request first, see {@link CompileQueue}. Under a burst a thread takes up to
+ *     {@link #maxBatch} queued requests of the same tier and compiles them with a single
+ *     {@link CompilationEngine#compile_batch} call, amortizing hand-off and queue synchronization. Engines which do not
+ *     declare {@link CompilationEngine#supportsBatch()} gain nothing from it, so they are not batched. The batch is split
+ *     fairly between workers, so batching never serializes compilations which could run in parallel.
+ *     <li> Compiler threads are started lazily by {@link WorkerLauncher}, by running workers or by the adaptation
+ *     step, never by a user thread: {@link #submit} only enqueues and signals. They never outnumber
+ *     {@link #targetWorkers()}, which never exceeds {@link #maxWorkers}, i.e.
+ *     {@link org.nsu.syspro.parprog.UserThread#compilationThreadBound}, so `Thread-bound-compilation` holds by
+ *     construction.
+ *     <li> The target adapts to CPU load between {@code 1} and {@link #workerLimit()}, see {@link CompilerPoolSizer}.
+ *     A surplus worker retires between compilations, a missing one is started as long as there is a backlog.
+ *     <li> Tier-aware preemption. A queued L1 request of a method which is already hot enough for L2 (by
+ *     {@link #setTierSkipping the tier skipping policy}) is compiled straight by L2 if the queue is short and nobody is
+ *     blocked on L1, saving one of the two {@code compile_l1} calls. Conversely, a worker which becomes free while every
+ *     other worker compiles L2 takes a waiting L1 request first, whatever its priority, so a flood of slow L2
+ *     compilations delays quick L1 ones by at most one L2 compilation. A single worker has no other workers, so it
+ *     follows priorities only, otherwise L2 would wait for every L1 request.
+ *     <li> No {@link org.nsu.syspro.parprog.UserThread} ever compiles, so `Heavy-compilation-offloading` holds as well.
+ *     <li> Idle compiler threads exit after {@link #keepAliveMillis}.
+ *     <li> Every compiler thread reports queue depth and compile durations into its own {@link JitMetrics.Recorder}.
+ *     <li> Requests, compilations and publications are reported to JFR, see {@link JitEvents}.
+ * </ul>
+ * Weak point: code of a batch is published only when the whole batch is compiled.
+ */
+public final class CompilerBroker {
+    private final CompilationEngine compiler;
+    private final CodeCache cache;
+    private final int maxWorkers;
+    private final int capacity;
+    private final long keepAliveMillis;
+    private final int maxBatch;
+
+    private final CompileQueue queue;
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final Semaphore available = new Semaphore(0);
+    private final AtomicInteger workers = new AtomicInteger(0);
+    private final AtomicInteger workerNames = new AtomicInteger(0);
+    private final AtomicInteger launches = new AtomicInteger(0); // workers asked of WorkerLauncher
+    private final JitMetrics metrics = new JitMetrics(this::queueDepth, this::workers, this::targetWorkers);
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private volatile int workerLimit;
+    private volatile int targetWorkers;
+    private volatile boolean adaptive = true;
+    private final AtomicLong compileCpuNanos = new AtomicLong(0); // touched once per batch
+    private final AtomicLong compileWallNanos = new AtomicLong(0);
+    private CompilerPoolSizer sizer; // guarded by this
+    private volatile TieredPolicy tierSkipping; // null if disabled
+    private final AtomicInteger compilingL2 = new AtomicInteger(0);
+    private volatile long l1CompileCost; // average per method, see CostModel
+    private volatile long l2CompileCost;
+
+    public CompilerBroker(CompilationEngine compiler, CodeCache cache, int maxWorkers, int capacity, long keepAliveMillis,
+                          long agingPerMilli) {
+        this(compiler, cache, maxWorkers, capacity, keepAliveMillis, agingPerMilli, 1);
+    }
+
+    public CompilerBroker(CompilationEngine compiler, CodeCache cache, int maxWorkers, int capacity, long keepAliveMillis,
+                          long agingPerMilli, int maxBatch) {
+        assert maxWorkers > 0 && capacity > 0 && keepAliveMillis > 0 && maxBatch > 0;
+        this.queue = new CompileQueue(agingPerMilli);
+        this.compiler = compiler;
+        this.cache = cache;
+        this.maxWorkers = maxWorkers;
+        this.capacity = capacity;
+        this.keepAliveMillis = keepAliveMillis;
+        this.maxBatch = compiler.supportsBatch() ? maxBatch : 1;
+        this.workerLimit = maxWorkers;
+        this.targetWorkers = maxWorkers;
+        this.sizer = new CompilerPoolSizer(Runtime.getRuntime().availableProcessors(), CompilerPoolSizer::systemCpuLoad,
+                System.nanoTime());
+        WorkerLauncher.init();
+    }
+
+    /**
+     * Tries to win the {@link MethodState} transition to {@code tier} and submits the request if succeeded.
+     * Non-blocking, safe to call from `executeMethod`.
+     *
+     * @return {@code true} if a new compilation was queued by this call
+     */
+    public boolean request(MethodID method, MethodState state, int tier) {
+        return request(method, state, tier, tier);
+    }
+
+    /**
+     * Eagerly requests every missing tier of a method up to {@code tier}: L1 first, L2 as soon as L1 is published.
+     * Used for warm starts ({@link WarmProfile}) and for callees of compiled callers ({@link SolutionThread}).
+     *
+     * @return {@code true} if a new compilation was queued by this call
+     */
+    public boolean prefetch(MethodID method, MethodState state, int tier) {
+        final int ready = MethodState.readyTier(state.word());
+        if (ready >= tier) {
+            return false;
+        }
+        // L2 is allowed only on top of L1 (or evicted L1), see `MethodState.tryQueueL2`
+        return request(method, state, (ready == TieredCode.INTERPRETED && !MethodState.l1Evicted(state.word()))
+                ? TieredCode.L1 : TieredCode.L2, tier);
+    }
+
+    private boolean request(MethodID method, MethodState state, int tier, int upTo) {
+        final boolean won = (tier == TieredCode.L1) ? state.tryQueueL1() : state.tryQueueL2();
+        if (!won) {
+            return false; // already requested or compiled by somebody
+        }
+        final CompileRequest request = new CompileRequest(method, state, tier, upTo);
+        if (!submit(request)) {
+            request.cancel(); // queue is full, somebody will retry later
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Non-blocking submission.
+     *
+     * @return {@code false} if the queue is full, caller still owns the permission in this case
+     */
+    public boolean submit(CompileRequest request) {
+        final int depth = pending.incrementAndGet();
+        if (depth > capacity) {
+            pending.decrementAndGet();
+            return false;
+        }
+        JitEvents.requested(request, depth);
+        queue.offer(request);
+        available.release();
+        if (workers.get() < targetWorkers && launches.getAndIncrement() == 0) {
+            WorkerLauncher.launch(this);
+        }
+        return true;
+    }
+
+    /**
+     * @return number of accepted but not yet started requests
+     */
+    public int queueDepth() {
+        return Math.max(0, pending.get());
+    }
+
+    public int maxWorkers() {
+        return maxWorkers;
+    }
+
+    public JitMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return number of live compiler threads
+     */
+    public int workers() {
+        return workers.get();
+    }
+
+    /**
+     * @return number of compiler threads the broker currently aims for
+     */
+    public int targetWorkers() {
+        return targetWorkers;
+    }
+
+    public int workerLimit() {
+        return workerLimit;
+    }
+
+    /**
+     * Control knob: upper limit for adaptation, or the exact pool size if adaptation is off.
+     *
+     * @param limit between {@code 1} and {@link #maxWorkers()}
+     */
+    public synchronized void setWorkerLimit(int limit) {
+        if (limit < 1 || limit > maxWorkers) {
+            throw new IllegalArgumentException("Worker limit must be in [1, " + maxWorkers + "]: " + limit);
+        }
+        workerLimit = limit;
+        retarget(adaptive ? Math.min(targetWorkers, limit) : limit);
+    }
+
+    public boolean adaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Control knob: with adaptation off the pool is sized to {@link #workerLimit()} exactly.
+     */
+    public synchronized void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+        if (!adaptive) {
+            retarget(workerLimit);
+        }
+    }
+
+    /**
+     * Control knob: lets workers compile a queued L1 request by L2 if {@code policy} would already promote the method
+     * to L2 judging by {@link MethodState#globalHotness()}.
+     *
+     * @param policy {@code null} disables tier skipping
+     */
+    public void setTierSkipping(TieredPolicy policy) {
+        tierSkipping = policy;
+    }
+
+    public TieredPolicy tierSkipping() {
+        return tierSkipping;
+    }
+
+    /**
+     * @return average duration of one compilation by {@code tier} in nanoseconds, {@code 0} if nothing was compiled yet.
+     * Until the first L2 compilation, L2 is assumed to be as expensive as L1.
+     */
+    public long compileCostNanos(int tier) {
+        assert tier == TieredCode.L1 || tier == TieredCode.L2;
+        if (tier == TieredCode.L1) {
+            return l1CompileCost;
+        }
+        final long l2 = l2CompileCost;
+        return (l2 != 0) ? l2 : l1CompileCost;
+    }
+
+    /**
+     * @return {@code true} unless {@link TieredPolicy#costModel()} of {@code policy} says compilation by {@code tier}
+     * does not pay off
+     */
+    boolean worthCompiling(TieredPolicy policy, MethodState state, int tier, long expectedInvocations) {
+        final CostModel cost = policy.costModel();
+        return cost == null || cost.worthCompiling(state, tier, expectedInvocations, compileCostNanos(tier));
+    }
+
+    /**
+     * Replaces the source of system CPU load, for tests.
+     */
+    synchronized void setLoadSource(DoubleSupplier systemLoad, int cores, long nowNanos) {
+        sizer = new CompilerPoolSizer(cores, systemLoad, nowNanos);
+    }
+
+    /**
+     * Periodic adaptation step, cheap if called too often. Called by {@link HotnessAggregator}.
+     */
+    synchronized void adapt(long nowNanos) {
+        if (adaptive) {
+            retarget(sizer.next(nowNanos, compileCpuNanos.get(), compileWallNanos.get(), targetWorkers, workerLimit));
+        }
+    }
+
+    private void retarget(int target) {
+        assert Thread.holdsLock(this) && 1 <= target && target <= maxWorkers;
+        final int previous = targetWorkers;
+        targetWorkers = target;
+        // surplus workers retire by themselves, missing ones are started only if there is something to do
+        for (int i = previous; i < target && workers.get() < Math.min(target, pending.get()); i++) {
+            maybeStartWorker();
+        }
+    }
+
+    /**
+     * Called by {@link WorkerLauncher}: one worker per submission which found the pool short, up to the target.
+     */
+    void launchWorkers() {
+        for (int n = launches.getAndSet(0); n > 0; n--) {
+            maybeStartWorker();
+        }
+    }
+
+    private void maybeStartWorker() {
+        while (true) {
+            final int current = workers.get();
+            if (current >= targetWorkers) {
+                return;
+            }
+            if (workers.compareAndSet(current, current + 1)) {
+                final Thread worker = new Thread(this::workerLoop, "jit-compiler-" + workerNames.getAndIncrement());
+                worker.setDaemon(true);
+                worker.start();
+                return;
+            }
+        }
+    }
+
+    private void workerLoop() {
+        final ArrayList<CompileRequest> batch = new ArrayList<>(maxBatch);
+        final JitMetrics.Recorder recorder = metrics.register(Thread.currentThread());
+        boolean retired = false;
+        try {
+            while (!(retired = retireIfSurplus()) && available.tryAcquire(keepAliveMillis, TimeUnit.MILLISECONDS)) {
+                // leave a fair share of the backlog to other workers
+                final int share = Math.min(maxBatch, 1 + available.availablePermits() / maxWorkers);
+                int permits = 1;
+                while (permits < share && available.tryAcquire()) {
+                    permits++;
+                }
+                recorder.recordQueueDepth(pending.get());
+                batch.clear();
+                // L1 lane: the last worker not busy with L2 prefers L1
+                final int target = targetWorkers;
+                final int preferred = (target >= 2 && compilingL2.get() >= target - 1) ? TieredCode.L1 : -1;
+                final int taken = queue.pollBatch(System.nanoTime(), permits, preferred, batch);
+                assert taken > 0; // every permit corresponds to exactly one queued request
+                if (taken < permits) {
+                    available.release(permits - taken); // requests of another tier stay for the next round
+                }
+                pending.addAndGet(-taken);
+                if (taken == 1 && batch.get(0).tier == TieredCode.L1) {
+                    final CompileRequest upgraded = maybeSkipL1(batch.get(0));
+                    if (upgraded != null) {
+                        batch.set(0, upgraded);
+                        recorder.recordSkippedL1();
+                    }
+                }
+                final boolean l2 = batch.get(0).tier == TieredCode.L2;
+                if (l2) {
+                    compilingL2.incrementAndGet();
+                }
+                try {
+                    compile(batch, recorder);
+                } finally {
+                    if (l2) {
+                        compilingL2.decrementAndGet();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!retired) {
+                workers.decrementAndGet();
+            }
+            if (pending.get() > 0) {
+                // request was submitted while this worker was leaving, do not strand it
+                maybeStartWorker();
+            }
+        }
+    }
+
+    /**
+     * @return L2 request which replaces {@code request}, or {@code null} if L1 should be compiled as usual
+     */
+    private CompileRequest maybeSkipL1(CompileRequest request) {
+        final TieredPolicy policy = tierSkipping;
+        if (policy == null
+                || request.state.heat() >= SolutionThread.BLOCKED_HEAT // somebody waits for L1, L2 takes longer
+                || pending.get() >= targetWorkers // L2 would not start right away
+                || !policy.shouldPromote(TieredCode.L1, request.state.globalHotness())
+                || !worthCompiling(policy, request.state, TieredCode.L2, request.state.globalHotness())) {
+            return null;
+        }
+        return request.tryUpgradeToL2();
+    }
+
+    /**
+     * Leaves the pool if there are more workers than {@link #targetWorkers}.
+     *
+     * @return {@code true} if this worker has been removed from {@link #workers} and must exit
+     */
+    private boolean retireIfSurplus() {
+        while (true) {
+            final int current = workers.get();
+            if (current <= targetWorkers) {
+                return false;
+            }
+            if (workers.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void compile(ArrayList<CompileRequest> batch, JitMetrics.Recorder recorder) {
+        int published = 0;
+        boolean called = false; // once the engine is called, permissions are spent even if it throws
+        JitEvents.Compilation[] events = JitEvents.compilationsStarted(batch);
+        try {
+            final int tier = batch.get(0).tier;
+            final long start = System.nanoTime();
+            final long startCpu = CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+            final List<CompiledMethod> code;
+            called = true;
+            if (batch.size() == 1) {
+                final CompileRequest request = batch.get(0);
+                code = List.of((tier == TieredCode.L1)
+                        ? compiler.compile_l1(request.method)
+                        : compiler.compile_l2(request.method));
+            } else {
+                final ArrayList<MethodID> methods = new ArrayList<>(batch.size());
+                for (CompileRequest request : batch) {
+                    assert request.tier == tier;
+                    methods.add(request.method);
+                }
+                code = compiler.compile_batch(methods, tier);
+            }
+            assert code.size() == batch.size();
+            JitEvents.compilationsEnded(events, true);
+            events = null;
+            final long wall = System.nanoTime() - start;
+            compileWallNanos.addAndGet(wall);
+            compileCpuNanos.addAndGet(CPU_TIME ? THREADS.getCurrentThreadCpuTime() - startCpu : wall);
+            final long perMethod = wall / batch.size();
+            // racy blend, compilations are rare
+            if (tier == TieredCode.L1) {
+                l1CompileCost = CostModel.blend(l1CompileCost, perMethod);
+            } else {
+                l2CompileCost = CostModel.blend(l2CompileCost, perMethod);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                recorder.recordCompilation(tier, perMethod);
+            }
+            for (; published < batch.size(); published++) {
+                final CompileRequest request = batch.get(published);
+                // publish before completion: MethodState says "ready" only when code is already in the cache
+                final TieredCode best = cache.publish(request.state, code.get(published), tier);
+                request.complete();
+                if (best == null) {
+                    continue; // invalidated in flight, completion started the method over
+                }
+                JitEvents.published(request);
+                if (request.upTo > tier) {
+                    request(request.method, request.state, request.upTo);
+                }
+            }
+        } finally {
+            JitEvents.compilationsEnded(events, false); // engine threw
+            for (int i = published; i < batch.size(); i++) {
+                if (called) {
+                    batch.get(i).fail();
+                } else {
+                    batch.get(i).cancel();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Chooses how many compiler threads {@link CompilerBroker} should run, judging by CPU load.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> Load of everything except compilation is {@code system load - compiler load}, where compiler load is CPU time
+ *     actually spent inside the {@link org.nsu.syspro.parprog.external.CompilationEngine}. Cores not used by the rest
+ *     of the process are free for compilation. Even on a saturated machine compilation may take
+ *     {@link #GUARANTEED_SHARE} of it, otherwise warm-up would never end under load.
+ *     <li> A compilation may block (e.g. on I/O) instead of burning a core, so the number of workers is free cores divided
+ *     by cores one busy worker really uses. Such compilers are barely throttled by a busy machine.
+ *     <li> The target moves by one worker per period: a single noisy sample never halves the pool.
+ *     <li> The result is clamped to {@code [1, limit]}: one worker is always allowed, so every backlog is drained.
+ * </ul>
+ * Weak point: system CPU load includes other processes, so a busy neighbour shrinks the pool as well.
+ */
+final class CompilerPoolSizer {
+    static final long PERIOD_NANOS = 100_000_000L;
+
+    static final double GUARANTEED_SHARE = 0.1;
+
+    private static final double MIN_CORES_PER_WORKER = 0.01;
+
+    private final int cores;
+    private final DoubleSupplier systemLoad;
+
+    // caller (aggregator thread) only
+    private long sampledAtNanos;
+    private long sampledCpuNanos;
+    private long sampledWallNanos;
+
+    CompilerPoolSizer(int cores, DoubleSupplier systemLoad, long nowNanos) {
+        assert cores > 0;
+        this.cores = cores;
+        this.systemLoad = systemLoad;
+        this.sampledAtNanos = nowNanos;
+    }
+
+    /**
+     * @return system-wide CPU load in {@code [0, 1]}, negative if the platform does not report it
+     */
+    @SuppressWarnings("deprecation") // `getCpuLoad` replaced it in Java 14, this project targets Java 11
+    static double systemCpuLoad() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getSystemCpuLoad();
+        }
+        final double average = os.getSystemLoadAverage();
+        return (average < 0) ? -1 : Math.min(1, average / os.getAvailableProcessors());
+    }
+
+    /**
+     * Pure sizing rule, see class comment.
+     *
+     * @param systemLoad     CPU load of the whole machine in {@code [0, 1]}
+     * @param compilerCores  cores used by compilation on average
+     * @param coresPerWorker cores used by one worker while it compiles
+     */
+    static int desiredWorkers(int cores, double systemLoad, double compilerCores, double coresPerWorker, int limit) {
+        final double others = Math.min(cores, Math.max(0, systemLoad * cores - compilerCores));
+        final double free = Math.max(cores - others, cores * GUARANTEED_SHARE);
+        final double workers = Math.floor(free / Math.max(MIN_CORES_PER_WORKER, coresPerWorker));
+        return (int) Math.max(1, Math.min(limit, workers));
+    }
+
+    /**
+     * @param cpuNanos  total CPU time spent in compilations so far
+     * @param wallNanos total wall time spent in compilations so far
+     * @return next target between {@code 1} and {@code limit}, or {@code current} if it is too early to decide
+     */
+    int next(long nowNanos, long cpuNanos, long wallNanos, int current, int limit) {
+        final long elapsed = nowNanos - sampledAtNanos;
+        if (elapsed < PERIOD_NANOS) {
+            return Math.min(current, limit);
+        }
+        final long cpu = cpuNanos - sampledCpuNanos;
+        final long wall = wallNanos - sampledWallNanos;
+        sampledAtNanos = nowNanos;
+        sampledCpuNanos = cpuNanos;
+        sampledWallNanos = wallNanos;
+
+        final double load = systemLoad.getAsDouble();
+        if (load < 0) {
+            return Math.min(current, limit);
+        }
+        // nothing was compiled: assume the worst, a worker burns a whole core
+        final double coresPerWorker = (wall > 0) ? (double) cpu / wall : 1;
+        final int desired = desiredWorkers(cores, load, (double) cpu / elapsed, coresPerWorker, limit);
+        final int step = Integer.compare(desired, current);
+        return Math.max(1, Math.min(limit, current + step));
+    }
+}
@@ -0,0 +1,343 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free open-addressing (linear probing) hash table from primitive {@code long} keys to non-null values.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> Every slot holds {@code null}, an immutable {@link Node} or a {@link Moved} marker. Keys are never boxed.
+ *     <li> Readers ({@link #get(long)}, {@link #forEach(Visitor)}) never block, never help and never allocate,
+ *     so a lookup is always bounded by the table size.
+ *     <li> Writers are lock-free: insertion claims an empty slot by CAS, {@link #replace} swaps a whole {@link Node} by CAS.
+ *     <li> Keys are never removed, so probe chains never break. Growth is cooperative: the table is doubled and every writer
+ *     that notices an unfinished migration helps to seal and copy old slots before touching the new table.
+ *     Copying is idempotent (the same {@link Node} object is re-inserted), so a stalled helper never blocks others.
+ * </ul>
+ * Weak point: no removal. This is fine thanks to `Limited-methods`, but memory is never returned to the system.
+ */
+final class ConcurrentLongTable<V> {
+
+    @FunctionalInterface
+    interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int COPY_CHUNK = 16;
+
+    private static final class Node<V> {
+        final long key;
+        final V value;
+
+        Node(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Sealed slot of a table which is being migrated. {@code node == null} marks a sealed empty slot.
+     */
+    private static final class Moved {
+        final Node<?> node;
+
+        Moved(Node<?> node) {
+            this.node = node;
+        }
+    }
+
+    private static final Moved MOVED_EMPTY = new Moved(null);
+
+    private static final class Table {
+        final AtomicReferenceArray<Object> slots;
+        final int mask;
+        final int shift;
+        final AtomicInteger used = new AtomicInteger(0);
+        final AtomicInteger copyCursor = new AtomicInteger(0);
+        final AtomicInteger copied = new AtomicInteger(0);
+        final AtomicReference<Table> next = new AtomicReference<>();
+        volatile boolean migrated;
+
+        Table(int capacity) {
+            assert Integer.bitCount(capacity) == 1;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+            this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        }
+
+        int indexOf(long key) {
+            // Fibonacci hashing: consecutive ids (the common case) spread over the whole table
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift) & mask;
+        }
+
+        boolean overloaded(int used) {
+            return used > (mask + 1) / 2;
+        }
+    }
+
+    private final AtomicReference<Table> root;
+
+    ConcurrentLongTable() {
+        this(MIN_CAPACITY);
+    }
+
+    ConcurrentLongTable(int expectedSize) {
+        final int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1) * 2);
+        this.root = new AtomicReference<>(new Table(capacity));
+    }
+
+    /**
+     * Wait-free lookup (bounded by the total size of all tables).
+     *
+     * @return value associated with {@code key} or {@code null}
+     */
+    V get(long key) {
+        return get(root.get(), key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V get(Table t, long key) {
+        Node<V> forwarded = null;
+        outer:
+        while (t != null) {
+            int i = t.indexOf(key);
+            for (int probe = 0; probe <= t.mask; probe++, i = (i + 1) & t.mask) {
+                final Object s = t.slots.get(i);
+                if (s == null) {
+                    break outer;
+                }
+                if (s instanceof Node) {
+                    final Node<V> n = (Node<V>) s;
+                    if (n.key == key) {
+                        return n.value;
+                    }
+                    continue;
+                }
+                final Node<V> moved = (Node<V>) ((Moved) s).node;
+                if (moved == null) {
+                    // end of this chain in the old table, the rest lives in the newer one
+                    t = t.next.get();
+                    continue outer;
+                }
+                if (moved.key == key) {
+                    // sealed but probably not copied yet: newer table wins, sealed node is the fallback
+                    forwarded = moved;
+                    t = t.next.get();
+                    continue outer;
+                }
+            }
+            t = t.next.get();
+        }
+        return (forwarded == null) ? null : forwarded.value;
+    }
+
+    /**
+     * Lock-free insertion.
+     *
+     * @return value already associated with {@code key} or {@code null} if {@code value} was inserted
+     */
+    @SuppressWarnings("unchecked")
+    V putIfAbsent(long key, V value) {
+        assert value != null;
+        Node<V> node = null;
+        retry:
+        while (true) {
+            final Table t = writable();
+            int i = t.indexOf(key);
+            for (int probe = 0; probe <= t.mask; ) {
+                final Object s = t.slots.get(i);
+                if (s == null) {
+                    if (t.overloaded(t.used.get())) {
+                        grow(t);
+                        continue retry;
+                    }
+                    if (node == null) {
+                        node = new Node<>(key, value);
+                    }
+                    if (t.slots.compareAndSet(i, null, node)) {
+                        if (t.overloaded(t.used.incrementAndGet())) {
+                            grow(t);
+                        }
+                        return null;
+                    }
+                    continue; // re-read the same slot, somebody else claimed it
+                }
+                if (s instanceof Moved) {
+                    continue retry;
+                }
+                final Node<V> n = (Node<V>) s;
+                if (n.key == key) {
+                    return n.value;
+                }
+                probe++;
+                i = (i + 1) & t.mask;
+            }
+            grow(t);
+        }
+    }
+
+    /**
+     * Lock-free compare-and-set of the value associated with {@code key}. Values are compared by identity.
+     *
+     * @return {@code true} if {@code key} was associated with {@code expected} and now is associated with {@code update}
+     */
+    @SuppressWarnings("unchecked")
+    boolean replace(long key, V expected, V update) {
+        assert expected != null && update != null;
+        retry:
+        while (true) {
+            final Table t = writable();
+            int i = t.indexOf(key);
+            for (int probe = 0; probe <= t.mask; ) {
+                final Object s = t.slots.get(i);
+                if (s == null) {
+                    return false;
+                }
+                if (s instanceof Moved) {
+                    continue retry;
+                }
+                final Node<V> n = (Node<V>) s;
+                if (n.key != key) {
+                    probe++;
+                    i = (i + 1) & t.mask;
+                    continue;
+                }
+                if (n.value != expected) {
+                    return false;
+                }
+                if (t.slots.compareAndSet(i, n, new Node<>(key, update))) {
+                    return true;
+                }
+                // slot was replaced or sealed concurrently, re-read it
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Weakly consistent traversal: every key inserted before the call is visited at least once with some value it
+     * had during the traversal. A key may be visited twice if a migration happens concurrently.
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(Visitor<? super V> visitor) {
+        for (Table t = root.get(); t != null; t = t.next.get()) {
+            for (int i = 0; i <= t.mask; i++) {
+                final Object s = t.slots.get(i);
+                if (s instanceof Node) {
+                    final Node<V> n = (Node<V>) s;
+                    visitor.visit(n.key, n.value);
+                }
+                // sealed nodes are visited in the newer table
+            }
+        }
+    }
+
+    /**
+     * @return approximate number of keys
+     */
+    int size() {
+        Table t = root.get();
+        for (Table n = t.next.get(); n != null; n = n.next.get()) {
+            t = n;
+        }
+        return t.used.get();
+    }
+
+    /**
+     * Finds the newest table, finishing all pending migrations on the way.
+     */
+    private Table writable() {
+        Table t = root.get();
+        while (true) {
+            final Table next = t.next.get();
+            if (next == null) {
+                return t;
+            }
+            help(t, next);
+            t = next;
+        }
+    }
+
+    private void grow(Table t) {
+        final Table next = t.next.get();
+        if (next == null) {
+            t.next.compareAndSet(null, new Table((t.mask + 1) * 2));
+        }
+        help(t, t.next.get());
+    }
+
+    private void help(Table t, Table next) {
+        if (!t.migrated) {
+            final int capacity = t.mask + 1;
+            while (true) {
+                final int start = t.copyCursor.getAndAdd(COPY_CHUNK);
+                if (start >= capacity) {
+                    break;
+                }
+                final int end = Math.min(capacity, start + COPY_CHUNK);
+                for (int i = start; i < end; i++) {
+                    migrate(t, next, i);
+                }
+                t.copied.addAndGet(end - start);
+            }
+            if (t.copied.get() < capacity) {
+                // some helper is stalled in the middle of its chunk: do not wait for it, copy everything again
+                for (int i = 0; i < capacity; i++) {
+                    migrate(t, next, i);
+                }
+            }
+            t.migrated = true;
+        }
+
+        // readers starting from an old root still find everything by following `next`
+        root.compareAndSet(t, next);
+    }
+
+    private static void migrate(Table from, Table to, int i) {
+        while (true) {
+            final Object s = from.slots.get(i);
+            if (s instanceof Moved) {
+                final Node<?> n = ((Moved) s).node;
+                if (n != null) {
+                    copy(to, n);
+                }
+                return;
+            }
+            final Moved sealed = (s == null) ? MOVED_EMPTY : new Moved((Node<?>) s);
+            if (from.slots.compareAndSet(i, s, sealed)) {
+                if (s != null) {
+                    copy(to, (Node<?>) s);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Inserts exactly this {@link Node} object unless its key is already present. Idempotent.
+     */
+    private static void copy(Table to, Node<?> node) {
+        int i = to.indexOf(node.key);
+        for (int probe = 0; probe <= to.mask; ) {
+            final Object s = to.slots.get(i);
+            if (s == null) {
+                if (to.slots.compareAndSet(i, null, node)) {
+                    to.used.incrementAndGet();
+                    return;
+                }
+                continue;
+            }
+            final Node<?> n = (s instanceof Moved) ? ((Moved) s).node : (Node<?>) s;
+            if (n != null && n.key == node.key) {
+                return;
+            }
+            probe++;
+            i = (i + 1) & to.mask;
+        }
+        throw new IllegalStateException("Migration target is full");
+    }
+}
@@ -0,0 +1,50 @@
+package org.nsu.syspro.parprog.solution;
+
+/**
+ * {@link TieredPolicy} which counts like another policy, but promotes only if its {@link CostModel} agrees.
+ */
+final class CostAwarePolicy implements TieredPolicy {
+    private final TieredPolicy counting;
+    private final CostModel model;
+
+    CostAwarePolicy(TieredPolicy counting, CostModel model) {
+        assert counting.costModel() == null;
+        this.counting = counting;
+        this.model = model;
+    }
+
+    @Override
+    public long threshold(int tier) {
+        return counting.threshold(tier);
+    }
+
+    @Override
+    public long halfLifeNanos() {
+        return counting.halfLifeNanos();
+    }
+
+    @Override
+    public int samplingShift() {
+        return counting.samplingShift();
+    }
+
+    @Override
+    public boolean shouldPromote(int currentTier, long hotness) {
+        return counting.shouldPromote(currentTier, hotness);
+    }
+
+    @Override
+    public long decay(long hotness, long elapsedNanos) {
+        return counting.decay(hotness, elapsedNanos);
+    }
+
+    @Override
+    public CostModel costModel() {
+        return model;
+    }
+
+    @Override
+    public String toString() {
+        return "CostAwarePolicy(" + counting + ", " + model + ")";
+    }
+}
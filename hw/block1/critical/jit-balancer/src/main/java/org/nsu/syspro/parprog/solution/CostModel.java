@@ -0,0 +1,87 @@
+package org.nsu.syspro.parprog.solution;
+
+/**
+ * Cost/benefit rule for compilation: compile by the next tier only if the time it saves could ever pay for the
+ * compilation itself. This is the "used CPU cycles" efficiency goal from the readme.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> {@link SolutionThread} times one execution of every {@link #SAMPLE_INTERVAL} invocations of a method below
+ *     L2 and reports it with {@link MethodState#recordExecutionCost}. Interpretation and L1 are measured separately.
+ *     <li> {@link CompilerBroker} measures compile time per tier ({@link CompilerBroker#compileCostNanos(int)}).
+ *     The model is consulted by every promotion: user threads, {@link HotnessAggregator} and skipping of L1.
+ *     <li> The next tier is expected to run {@link #speedup} times faster than the current one (L2 cost is estimated
+ *     from the interpreter if L1 was never sampled, and never above it). Past invocations predict future ones: a method
+ *     called {@code n} times is expected to be called about {@code n} more times.
+ *     <li> With no measurements yet the model says "compile", so it only ever defers decisions of the count-based policy.
+ *     Deadlines of `Eventual-per-thread-progress-*` are kept by {@link SolutionThread} regardless of the model.
+ * </ul>
+ * Weak points:
+ * <ul>
+ *     <li> Timing is inclusive: nested {@code executeMethod} calls are charged to the caller.
+ *     <li> Capped samples make a method which really got slower look expensive only after a few dozen samples.
+ *     <li> Speedup is an assumption, the real L2 cost is known only after the compilation.
+ *     <li> Deferring an L1 compilation until the deadline makes the thread block there, trading latency for CPU.
+ * </ul>
+ */
+public final class CostModel {
+    public static final int SAMPLE_INTERVAL = 1 << 7;
+
+    private final double speedup;
+
+    /**
+     * @param speedup how many times each tier is expected to be faster than the previous one
+     */
+    public CostModel(double speedup) {
+        if (!(speedup > 1)) {
+            throw new IllegalArgumentException("Speedup must be above 1: " + speedup);
+        }
+        this.speedup = speedup;
+    }
+
+    public static CostModel defaultModel() {
+        return new CostModel(2);
+    }
+
+    /**
+     * @param tier                target tier, the method currently runs at {@code tier - 1}
+     * @param expectedInvocations how many more times the method is expected to be called
+     * @param compileCostNanos    expected duration of the compilation, {@code 0} if unknown
+     * @return {@code true} if compilation is expected to save more time than it costs
+     */
+    public boolean worthCompiling(MethodState state, int tier, long expectedInvocations, long compileCostNanos) {
+        assert tier == TieredCode.L1 || tier == TieredCode.L2;
+        long current = state.executionCost(tier - 1);
+        if (tier == TieredCode.L2) {
+            final long interpreted = state.executionCost(TieredCode.INTERPRETED);
+            if (current == 0) {
+                // L1 code was not sampled yet: estimate it from the interpreter
+                current = (long) (interpreted / speedup);
+            } else if (interpreted != 0) {
+                // the first samples of fresh code are not capped, yet L1 is never slower than the interpreter
+                current = Math.min(current, interpreted);
+            }
+        }
+        if (current == 0 || compileCostNanos == 0) {
+            return true; // nothing measured yet, trust the count-based policy
+        }
+        final double saved = current * (1 - 1 / speedup) * (double) expectedInvocations;
+        return saved >= compileCostNanos;
+    }
+
+    /**
+     * Exponentially weighted moving average with weight {@code 1/8} for the new sample. A sample is capped by twice the
+     * average: a GC pause or preemption inside a timed execution must not make a method look expensive.
+     */
+    static long blend(long average, long sample) {
+        if (average == 0) {
+            return Math.max(1, sample);
+        }
+        return Math.max(1, average + (Math.min(sample, 2 * average) - average) / 8);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CostModel(speedup=%.1f)", speedup);
+    }
+}
@@ -0,0 +1,215 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.nsu.syspro.parprog.external.MethodID;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Invalidation of compiled code, e.g. after a class redefinition or a failed speculation: every thread stops using the
+ * code of the method, falls back to interpretation and the method may be compiled again.
+ * <br>
+ * This breaks `Per-thread-monotonicity`, so it is a mode of its own: {@code -Djit.deoptimization=true}. Without it
+ * {@link #invalidate} is refused and {@link SolutionThread} pays nothing.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> {@link #invalidate} drops the code from {@link CodeCache} and resets {@link MethodState} (a compilation in
+ *     flight is discarded), then bumps the global {@link #epoch()} and retires the method with the new epoch.
+ *     <li> Each user thread checks the epoch with one volatile read per call. If it moved, the thread forgets its own
+ *     copies of all methods retired since, wherever it is. No lock on the `executeMethod` path: a thread joins the
+ *     protocol under the monitor of the deoptimizer before its task starts, see {@link Participant#bind()}.
+ *     <li> Stale code could still run in an outer frame of a nested {@code executeMethod} call. So a thread announces the
+ *     epoch it has caught up with only between top-level calls (quiescent-state-based reclamation).
+ *     <li> A retired method is reclaimed once every live thread has announced its epoch. Then no thread can reach the
+ *     stale code any more ({@link #reclaimed}), and its entry is dropped. Dead threads do not count.
+ * </ul>
+ * Weak point: a thread which stops calling methods without terminating holds reclamation back, as in any epoch scheme.
+ */
+public final class Deoptimizer {
+    public static final String PROPERTY = "jit.deoptimization";
+
+    private static final Retired[] NONE = new Retired[0];
+
+    private final boolean enabled;
+    private final CodeCache cache;
+    private final CompilationStates states;
+
+    private volatile long epoch; // written under `this`
+    private volatile Retired[] retired = NONE; // copy-on-write under `this`, ordered by epoch
+    private final ArrayList<Participant> participants = new ArrayList<>(); // guarded by `this`
+
+    private static final class Retired {
+        final long epoch;
+        final long methodId;
+
+        Retired(long epoch, long methodId) {
+            this.epoch = epoch;
+            this.methodId = methodId;
+        }
+    }
+
+    Deoptimizer(boolean enabled, CodeCache cache, CompilationStates states) {
+        this.enabled = enabled;
+        this.cache = cache;
+        this.states = states;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * @return number of invalidations so far
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Non-blocking for user threads: they notice on their next call.
+     *
+     * @return epoch of this invalidation, see {@link #reclaimed(long)}
+     * @throws IllegalStateException if the deoptimization mode is off
+     */
+    public long invalidate(MethodID method) {
+        return invalidate(method.id());
+    }
+
+    public synchronized long invalidate(long methodId) {
+        if (!enabled) {
+            throw new IllegalStateException("Per-thread-monotonicity forbids invalidation, enable -D" + PROPERTY + "=true");
+        }
+        cache.invalidate(states.of(methodId));
+        final long next = epoch + 1;
+        final Retired[] current = retired;
+        final Retired[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = new Retired(next, methodId);
+        retired = grown;
+        epoch = next; // after the cache and the retired list: a thread which sees the epoch sees both
+        return next;
+    }
+
+    /**
+     * @return {@code true} if no thread can execute code invalidated at {@code epoch} or earlier any more
+     */
+    public boolean reclaimed(long epoch) {
+        return reclaim() >= epoch;
+    }
+
+    /**
+     * @return number of invalidated methods which some thread may still execute
+     */
+    public int pending() {
+        reclaim();
+        return retired.length;
+    }
+
+    /**
+     * @return the latest epoch announced by every live thread; retired methods up to it are dropped
+     */
+    private synchronized long reclaim() {
+        long safe = epoch;
+        for (int i = participants.size() - 1; i >= 0; i--) {
+            final Participant p = participants.get(i);
+            if (p.ownerTerminated()) {
+                participants.remove(i);
+            } else {
+                safe = Math.min(safe, p.announced);
+            }
+        }
+        final Retired[] current = retired;
+        int keep = 0;
+        while (keep < current.length && current[keep].epoch <= safe) {
+            keep++;
+        }
+        if (keep > 0) {
+            retired = Arrays.copyOfRange(current, keep, current.length);
+        }
+        return safe;
+    }
+
+    Participant participant(Thread user) {
+        return new Participant(user);
+    }
+
+    /**
+     * Per-thread side of the epoch protocol. All methods except {@link #ownerTerminated()} are called by the owner.
+     */
+    final class Participant {
+        private final ThreadOwner owner;
+        private volatile long announced; // read by reclaim
+        private boolean registered;
+        private long seen;
+
+        private Participant(Thread user) {
+            this.owner = new ThreadOwner(user);
+        }
+
+        /**
+         * Joins the protocol before the task of the owner starts, so none of its calls ever waits for
+         * {@link #invalidate} or {@link #reclaim}.
+         */
+        void bind() {
+            if (registered) {
+                return;
+            }
+            registered = true;
+            owner.bind();
+            synchronized (Deoptimizer.this) {
+                seen = epoch;
+                announced = seen;
+                participants.add(this);
+            }
+        }
+
+        /**
+         * Single volatile read. Only between {@link #bind()} and {@link #leave()}.
+         */
+        boolean behind() {
+            assert registered;
+            return epoch != seen;
+        }
+
+        /**
+         * Calls {@code forget} for every method invalidated since the previous call.
+         */
+        void catchUp(LongConsumer forget) {
+            final long now = epoch; // before the list: it already holds everything up to `now`
+            for (Retired r : retired) {
+                if (r.epoch > seen && r.epoch <= now) {
+                    forget.accept(r.methodId);
+                }
+            }
+            seen = now;
+        }
+
+        /**
+         * Called right before a top-level call executes: no stale code is on the stack of the owner.
+         */
+        void announce() {
+            if (announced != seen) {
+                announced = seen;
+            }
+        }
+
+        /**
+         * Leaves the protocol when the owner is done: a finished thread neither holds reclamation back nor stays
+         * reachable from this deoptimizer.
+         */
+        void leave() {
+            if (!registered) {
+                return;
+            }
+            registered = false;
+            synchronized (Deoptimizer.this) {
+                participants.remove(this);
+            }
+        }
+
+        private boolean ownerTerminated() {
+            return owner.terminated();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.util.ArrayList;
+
+/**
+ * Background thread which builds the global hotness signal ({@link MethodState#globalHotness()}) out of per-thread
+ * {@link HotnessStripe}s.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> User threads only write their own {@link MethodProfile}s, there is no shared counter to ping-pong between cores.
+ *     <li> Every {@link #periodMillis} the aggregator sums published counters of all stripes. Stripes of terminated threads
+ *     are folded into {@link MethodState#retiredHotness} once and dropped, so the global signal never goes down.
+ *     Their profiles are released at the same time, even if somebody still holds the thread.
+ *     <li> If the sum crosses the global {@link TieredPolicy} threshold, the aggregator requests compilation itself:
+ *     a method which is lukewarm in each of many threads gets compiled early.
+ *     <li> The same thread drives {@link CompilerBroker#adapt}: nobody needs adaptive compilation while nobody runs.
+ *     <li> The thread is started with the first stripe and exits when no live stripes are left.
+ * </ul>
+ * Weak point: the signal lags behind by up to one period plus the publication interval of {@link SolutionThread}.
+ */
+final class HotnessAggregator {
+    private final CompilerBroker broker;
+    private final TieredPolicy policy;
+    private final long periodMillis;
+
+    private final ArrayList<HotnessStripe> stripes = new ArrayList<>(); // guarded by `this`
+    private Thread thread; // guarded by `this`
+
+    // aggregator thread only
+    private long round;
+    private final ArrayList<MethodProfile> touched = new ArrayList<>();
+
+    HotnessAggregator(CompilerBroker broker, TieredPolicy policy, long periodMillis) {
+        assert periodMillis > 0;
+        this.broker = broker;
+        this.policy = policy;
+        this.periodMillis = periodMillis;
+    }
+
+    synchronized void register(HotnessStripe stripe) {
+        stripes.add(stripe);
+        if (thread == null) {
+            thread = new Thread(this::loop, "jit-hotness-aggregator");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return number of stripes which are not retired yet
+     */
+    synchronized int stripes() {
+        return stripes.size();
+    }
+
+    private synchronized HotnessStripe[] liveStripes() {
+        return stripes.toArray(new HotnessStripe[0]);
+    }
+
+    private synchronized boolean retire(ArrayList<HotnessStripe> dead) {
+        stripes.removeAll(dead);
+        if (stripes.isEmpty()) {
+            thread = null;
+            return true;
+        }
+        return false;
+    }
+
+    private void loop() {
+        try {
+            while (true) {
+                Thread.sleep(periodMillis);
+                if (aggregate()) {
+                    return;
+                }
+                broker.adapt(System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                thread = null;
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One aggregation round. Must be called by a single thread at a time.
+     *
+     * @return {@code true} if there are no live stripes left and the aggregator thread has been released
+     */
+    boolean aggregate() {
+        round++;
+        touched.clear();
+        final ArrayList<HotnessStripe> dead = new ArrayList<>();
+        for (HotnessStripe stripe : liveStripes()) {
+            // check termination before reading: counters of a terminated thread are final
+            final boolean terminated = stripe.ownerTerminated();
+            final int size = stripe.size();
+            for (int i = 0; i < size; i++) {
+                final MethodProfile p = stripe.get(i);
+                final int published = p.published();
+                if (terminated) {
+                    p.state.retiredHotness += published;
+                    accumulate(p, 0);
+                } else {
+                    accumulate(p, published);
+                }
+            }
+            if (terminated) {
+                stripe.clear(); // the thread object may outlive its work, its profiles must not
+                dead.add(stripe);
+            }
+        }
+
+        for (MethodProfile p : touched) {
+            final MethodState state = p.state;
+            final long total = state.retiredHotness + state.aggregate;
+            state.publishGlobalHotness(total);
+            promote(p, total);
+        }
+        return !dead.isEmpty() && retire(dead);
+    }
+
+    private void accumulate(MethodProfile p, int published) {
+        final MethodState state = p.state;
+        if (state.aggregateRound != round) {
+            state.aggregateRound = round;
+            state.aggregate = 0;
+            touched.add(p);
+        }
+        state.aggregate += published;
+    }
+
+    private void promote(MethodProfile p, long total) {
+        final long w = p.state.word();
+        final int phase = MethodState.phase(w);
+        if (phase != MethodState.NEVER_COMPILED && phase != MethodState.L1_READY) {
+            return;
+        }
+        if (MethodState.l1Evicted(w)) {
+            return; // evicted because it went cold: recompile only on demand of user threads
+        }
+        final int ready = MethodState.readyTier(w);
+        if (policy.shouldPromote(ready, total) && broker.worthCompiling(policy, p.state, ready + 1, total)) {
+            broker.request(p.method, p.state, ready + 1);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.nsu.syspro.parprog.solution;
+
+/**
+ * Thread-confined sampler for probabilistic hotness counting: {@link #sample()} is {@code true} for one invocation out of
+ * {@code 2^shift} on average, and each sampled invocation accounts for {@link #weight()} real ones.
+ * <br>
+ * Randomness comes from a private xorshift64 generator: a few register operations, no shared state,
+ * no {@link java.util.concurrent.ThreadLocalRandom} lookup. With {@code shift == 0} every invocation is sampled
+ * and no random numbers are generated at all (exact counting).
+ */
+public final class HotnessSampler {
+    private final long mask;
+    private final long weight;
+    private long seed;
+
+    public HotnessSampler(int shift, long seed) {
+        if (shift < 0 || shift > 30) {
+            throw new IllegalArgumentException("Bad sampling shift: " + shift);
+        }
+        this.mask = (1L << shift) - 1;
+        this.weight = 1L << shift;
+        this.seed = (seed == 0) ? 0x9E3779B97F4A7C15L : seed; // xorshift state must never be zero
+    }
+
+    public boolean sample() {
+        if (mask == 0) {
+            return true;
+        }
+        long x = seed;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        seed = x;
+        return (x & mask) == 0;
+    }
+
+    public long weight() {
+        return weight;
+    }
+}
@@ -0,0 +1,64 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.util.Arrays;
+
+/**
+ * All {@link MethodProfile}s of one thread. Appended by the owner only, scanned by {@link HotnessAggregator}.
+ * <br>
+ * The array is published with {@link #size} as a volatile counter: the owner writes the element first, then the size,
+ * so the aggregator never sees a {@code null} among the first {@link #size()} elements.
+ * <br>
+ * The owner is the thread which actually executes methods: a {@link org.nsu.syspro.parprog.UserThread} started as usual
+ * or a virtual thread which runs it, see {@link VirtualUserThreads}.
+ */
+final class HotnessStripe {
+    private static final MethodProfile[] NONE = new MethodProfile[0];
+
+    private final ThreadOwner owner;
+    private volatile MethodProfile[] profiles = new MethodProfile[16];
+    private volatile int size;
+
+    HotnessStripe(Thread user) {
+        this.owner = new ThreadOwner(user);
+    }
+
+    /**
+     * @return index of the new profile
+     */
+    int add(MethodProfile profile) {
+        owner.bind();
+        final int index = size;
+        MethodProfile[] current = profiles;
+        if (index == current.length) {
+            current = Arrays.copyOf(current, index * 2);
+            profiles = current;
+        }
+        current[index] = profile;
+        size = index + 1;
+        return index;
+    }
+
+    /**
+     * Safe from any thread if {@code index < size()}.
+     */
+    MethodProfile get(int index) {
+        return profiles[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Drops all profiles once {@link HotnessAggregator} has folded their counters. The owner must have terminated.
+     */
+    void clear() {
+        assert ownerTerminated();
+        size = 0;
+        profiles = NONE;
+    }
+
+    boolean ownerTerminated() {
+        return owner.terminated();
+    }
+}
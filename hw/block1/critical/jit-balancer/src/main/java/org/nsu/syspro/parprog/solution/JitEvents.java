@@ -0,0 +1,196 @@
+package org.nsu.syspro.parprog.solution;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events of the JIT, so tiering shows up in the same recording as GC and safepoints.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> Every event is emitted on a rare path only: request, compilation, publication, the first execution of a
+ *     method at a new tier by a thread and a warm profile which cannot be used. The `executeMethod` fast path is never
+ *     instrumented.
+ *     <li> Events follow the usual JFR idiom: allocate, check {@link Event#isEnabled()}, fill, commit. When no recording
+ *     is running the check folds to {@code false} and the allocation is eliminated by the JIT.
+ *     <li> The Java thread is recorded by JFR itself, {@link org.nsu.syspro.parprog.UserThread#id} is recorded
+ *     explicitly because a user thread may run on a virtual thread (see {@link VirtualUserThreads}).
+ *     <li> Stack traces are disabled: every event has a single call site.
+ * </ul>
+ * Enable with {@code -XX:StartFlightRecording} and {@code jit.*} event settings, e.g.
+ * {@code jfr print --events jit.Compilation recording.jfr}.
+ */
+public final class JitEvents {
+    private static final String CATEGORY = "JIT Balancer";
+
+    private JitEvents() {
+    }
+
+    @Name("jit.CompileRequested")
+    @Label("Compile Request Enqueued")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class CompileRequested extends Event {
+        @Label("Method Id")
+        long methodId;
+        @Label("Tier")
+        int tier;
+        @Label("Queue Depth")
+        @Description("Compile requests queued including this one")
+        int queueDepth;
+    }
+
+    @Name("jit.Compilation")
+    @Label("Compilation")
+    @Description("Duration of the event is the compile time, a batch is compiled by a single engine call")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class Compilation extends Event {
+        @Label("Method Id")
+        long methodId;
+        @Label("Tier")
+        int tier;
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+        @Label("Batch Size")
+        int batchSize;
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    @Name("jit.CodePublished")
+    @Label("Compiled Code Published")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class CodePublished extends Event {
+        @Label("Method Id")
+        long methodId;
+        @Label("Tier")
+        int tier;
+        @Label("Since Request")
+        @Description("Time from enqueueing the request to publication")
+        @Timespan(Timespan.NANOSECONDS)
+        long sinceRequest;
+    }
+
+    @Name("jit.TierReached")
+    @Label("First Execution At New Tier")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class TierReached extends Event {
+        @Label("User Thread Id")
+        long userThread;
+        @Label("Method Id")
+        long methodId;
+        @Label("Previous Tier")
+        int fromTier;
+        @Label("Tier")
+        int toTier;
+        @Label("Invocations")
+        @Description("Invocations of the method by this thread so far")
+        int invocations;
+    }
+
+    @Name("jit.WarmProfileFailed")
+    @Label("Warm Profile Failed")
+    @Description("The warm profile could not be read, the run starts cold, or could not be written")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class WarmProfileFailed extends Event {
+        @Label("Path")
+        String path;
+        @Label("Writing")
+        @Description("The profile was being written at shutdown rather than read")
+        boolean writing;
+        @Label("Message")
+        String message;
+    }
+
+    static void requested(CompileRequest request, int queueDepth) {
+        final CompileRequested event = new CompileRequested();
+        if (event.isEnabled()) {
+            event.methodId = request.method.id();
+            event.tier = request.tier;
+            event.queueDepth = queueDepth;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return started events, one per request, or {@code null} if the event is disabled
+     */
+    static Compilation[] compilationsStarted(List<CompileRequest> batch) {
+        if (!new Compilation().isEnabled()) {
+            return null;
+        }
+        final long now = System.nanoTime();
+        final Compilation[] events = new Compilation[batch.size()];
+        for (int i = 0; i < events.length; i++) {
+            final CompileRequest request = batch.get(i);
+            final Compilation event = new Compilation();
+            event.methodId = request.method.id();
+            event.tier = request.tier;
+            event.queueWait = now - request.enqueuedNanos;
+            event.batchSize = events.length;
+            event.begin();
+            events[i] = event;
+        }
+        return events;
+    }
+
+    static void compilationsEnded(Compilation[] events, boolean succeeded) {
+        if (events == null) {
+            return;
+        }
+        for (Compilation event : events) {
+            event.end();
+            event.succeeded = succeeded;
+            event.commit();
+        }
+    }
+
+    static void published(CompileRequest request) {
+        final CodePublished event = new CodePublished();
+        if (event.isEnabled()) {
+            event.methodId = request.method.id();
+            event.tier = request.tier;
+            event.sinceRequest = System.nanoTime() - request.enqueuedNanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Any {@link org.nsu.syspro.parprog.UserThread} implementation may report its tier transitions.
+     */
+    public static void tierReached(long userThread, long methodId, int fromTier, int toTier, int invocations) {
+        final TierReached event = new TierReached();
+        if (event.isEnabled()) {
+            event.userThread = userThread;
+            event.methodId = methodId;
+            event.fromTier = fromTier;
+            event.toTier = toTier;
+            event.invocations = invocations;
+            event.commit();
+        }
+    }
+
+    static void warmProfileFailed(Path path, boolean writing, IOException error) {
+        final WarmProfileFailed event = new WarmProfileFailed();
+        if (event.isEnabled()) {
+            event.path = path.toString();
+            event.writing = writing;
+            event.message = error.getMessage();
+            event.commit();
+        }
+    }
+}
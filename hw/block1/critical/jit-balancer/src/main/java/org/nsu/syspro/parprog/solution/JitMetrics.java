@@ -0,0 +1,332 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.function.IntSupplier;
+
+/**
+ * Production metrics of the JIT: dispatch latency, compile queue depth, compile durations and per-tier executions.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> Every reporting thread owns a {@link Recorder} and writes to it with opaque stores only: no shared counter,
+ *     no CAS and no allocation on the `executeMethod` path. Any {@link org.nsu.syspro.parprog.UserThread} subclass
+ *     could {@link #register} one.
+ *     <li> {@link #snapshot()} sums all recorders. Recorders of terminated threads are folded into retired totals
+ *     and dropped, so short-lived threads do not accumulate.
+ *     <li> Dispatch latency is {@code t2 - t1} of `Weak-worst-case-latency`: from entering {@code executeMethod} to
+ *     calling the {@link org.nsu.syspro.parprog.external.ExecutionEngine}. Reading the clock twice per call is
+ *     comparable to the fast path itself, so only every {@link #DISPATCH_SAMPLE_INTERVAL}-th call is timed, plus every
+ *     call which blocked: the tail is always exact, the body is sampled.
+ * </ul>
+ * Weak point: a snapshot is not atomic, counters recorded concurrently with it may be partially included.
+ */
+public final class JitMetrics {
+    public static final int DISPATCH_SAMPLE_INTERVAL = 1 << 6;
+
+    private static final int TIERS = TieredCode.L2 + 1;
+
+    private final IntSupplier queueDepth;
+    private final IntSupplier workers;
+    private final IntSupplier targetWorkers;
+    private final ArrayList<Recorder> recorders = new ArrayList<>(); // guarded by this
+    private final Totals retired = new Totals(); // guarded by this
+
+    /**
+     * Metrics without a compile queue, e.g. for a custom {@link org.nsu.syspro.parprog.UserThread}.
+     */
+    public JitMetrics() {
+        this(() -> 0, () -> 0, () -> 0);
+    }
+
+    /**
+     * Gauges are sampled by {@link #snapshot()}.
+     *
+     * @param queueDepth    current number of queued compile requests
+     * @param workers       current number of compiler threads
+     * @param targetWorkers number of compiler threads the pool aims for, see {@link CompilerBroker#targetWorkers()}
+     */
+    public JitMetrics(IntSupplier queueDepth, IntSupplier workers, IntSupplier targetWorkers) {
+        this.queueDepth = queueDepth;
+        this.workers = workers;
+        this.targetWorkers = targetWorkers;
+    }
+
+    /**
+     * @param user thread which is going to report; if its work actually runs on another thread (see
+     *             {@link VirtualUserThreads}), that thread must call {@link Recorder#bind()} before the first report
+     * @return recorder which must be written by a single thread only
+     */
+    public Recorder register(Thread user) {
+        final Recorder recorder = new Recorder(null, user);
+        join(recorder);
+        return recorder;
+    }
+
+    /**
+     * Lazy {@link #register}: the recorder joins these metrics on its first {@link Recorder#bind()}, called by the
+     * running thread. A thread which is constructed but never started is never tracked.
+     */
+    public Recorder recorder(Thread user) {
+        return new Recorder(this, user);
+    }
+
+    private synchronized void join(Recorder recorder) {
+        retireTerminated();
+        recorders.add(recorder);
+    }
+
+    public synchronized Snapshot snapshot() {
+        retireTerminated();
+        final Totals sum = new Totals();
+        sum.add(retired);
+        for (Recorder recorder : recorders) {
+            recorder.addTo(sum);
+        }
+        return new Snapshot(sum, queueDepth.getAsInt(), workers.getAsInt(), targetWorkers.getAsInt());
+    }
+
+    private void retireTerminated() {
+        assert Thread.holdsLock(this);
+        for (Iterator<Recorder> it = recorders.iterator(); it.hasNext(); ) {
+            final Recorder recorder = it.next();
+            // counters of a terminated thread are final
+            if (recorder.ownerTerminated()) {
+                recorder.addTo(retired);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Counters of one thread. All {@code record*} methods are owner-only.
+     */
+    public static final class Recorder {
+        private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+        private final JitMetrics joinOnBind; // null if registered eagerly
+        private final ThreadOwner owner;
+        private final Log2Histogram dispatch = new Log2Histogram();
+        private final long[] executions = new long[TIERS];
+        private final long[] belowGlobal = new long[TIERS];
+        private final Log2Histogram[] compile = {null, new Log2Histogram(), new Log2Histogram()};
+        private final Log2Histogram queueDepth = new Log2Histogram();
+        private final long[] skippedL1 = new long[1];
+        private int calls; // owner only, drives dispatch sampling
+
+        private Recorder(JitMetrics joinOnBind, Thread user) {
+            this.joinOnBind = joinOnBind;
+            this.owner = new ThreadOwner(user);
+        }
+
+        /**
+         * Declares the current thread as the one which reports into this recorder.
+         */
+        public void bind() {
+            if (owner.bind() && joinOnBind != null) {
+                joinOnBind.join(this);
+            }
+        }
+
+        /**
+         * @return {@code true} if this call should be timed, once per {@link #DISPATCH_SAMPLE_INTERVAL} calls
+         */
+        public boolean sampleDispatch() {
+            return (++calls & (DISPATCH_SAMPLE_INTERVAL - 1)) == 0;
+        }
+
+        /**
+         * @param nanos time from entering {@code executeMethod} to the execution of the method
+         */
+        public void recordDispatch(long nanos) {
+            dispatch.record(nanos);
+        }
+
+        /**
+         * @param tier        tier the method was executed at
+         * @param globalTier  best tier known to be compiled globally when the call was dispatched
+         */
+        public void recordExecution(int tier, int globalTier) {
+            increment(executions, tier);
+            if (tier < globalTier) {
+                increment(belowGlobal, tier);
+            }
+        }
+
+        /**
+         * @param tier  {@link TieredCode#L1} or {@link TieredCode#L2}
+         * @param nanos duration of a compilation; a batch reports its duration split evenly between methods
+         */
+        public void recordCompilation(int tier, long nanos) {
+            assert tier == TieredCode.L1 || tier == TieredCode.L2;
+            compile[tier].record(nanos);
+        }
+
+        /**
+         * @param depth compile queue depth observed by a compiler thread before taking work
+         */
+        public void recordQueueDepth(int depth) {
+            queueDepth.record(depth);
+        }
+
+        /**
+         * Reports a queued L1 compilation which was replaced by L2, see {@link CompilerBroker#setTierSkipping}.
+         */
+        public void recordSkippedL1() {
+            increment(skippedL1, 0);
+        }
+
+        private static void increment(long[] counters, int i) {
+            COUNTS.setOpaque(counters, i, counters[i] + 1);
+        }
+
+        private boolean ownerTerminated() {
+            return owner.terminated();
+        }
+
+        private void addTo(Totals totals) {
+            dispatch.addTo(totals.dispatch);
+            for (int tier = 0; tier < TIERS; tier++) {
+                totals.executions[tier] += (long) COUNTS.getOpaque(executions, tier);
+                totals.belowGlobal[tier] += (long) COUNTS.getOpaque(belowGlobal, tier);
+            }
+            compile[TieredCode.L1].addTo(totals.compile[TieredCode.L1]);
+            compile[TieredCode.L2].addTo(totals.compile[TieredCode.L2]);
+            queueDepth.addTo(totals.queueDepth);
+            totals.skippedL1 += (long) COUNTS.getOpaque(skippedL1, 0);
+        }
+    }
+
+    private static final class Totals {
+        final long[] dispatch = new long[Log2Histogram.BUCKETS];
+        final long[] executions = new long[TIERS];
+        final long[] belowGlobal = new long[TIERS];
+        final long[][] compile = {null, new long[Log2Histogram.BUCKETS], new long[Log2Histogram.BUCKETS]};
+        final long[] queueDepth = new long[Log2Histogram.BUCKETS];
+        long skippedL1;
+
+        void add(Totals other) {
+            skippedL1 += other.skippedL1;
+            for (int b = 0; b < Log2Histogram.BUCKETS; b++) {
+                dispatch[b] += other.dispatch[b];
+                compile[TieredCode.L1][b] += other.compile[TieredCode.L1][b];
+                compile[TieredCode.L2][b] += other.compile[TieredCode.L2][b];
+                queueDepth[b] += other.queueDepth[b];
+            }
+            for (int tier = 0; tier < TIERS; tier++) {
+                executions[tier] += other.executions[tier];
+                belowGlobal[tier] += other.belowGlobal[tier];
+            }
+        }
+    }
+
+    /**
+     * Immutable sum of all recorders at some moment. Latencies are reported as bucket upper bounds, i.e. rounded up to
+     * a power of two nanoseconds.
+     */
+    public static final class Snapshot {
+        private final Totals totals;
+        private final int queueDepth;
+        private final int workers;
+        private final int targetWorkers;
+
+        private Snapshot(Totals totals, int queueDepth, int workers, int targetWorkers) {
+            this.totals = totals;
+            this.queueDepth = queueDepth;
+            this.workers = workers;
+            this.targetWorkers = targetWorkers;
+        }
+
+        /**
+         * @return number of timed {@code executeMethod} calls
+         */
+        public long dispatchSamples() {
+            return Log2Histogram.total(totals.dispatch);
+        }
+
+        /**
+         * @return upper bound of quantile {@code q} of dispatch latency in nanoseconds
+         */
+        public long dispatchNanos(double q) {
+            return Log2Histogram.quantile(totals.dispatch, q);
+        }
+
+        public long executions(int tier) {
+            return totals.executions[tier];
+        }
+
+        /**
+         * @return executions at {@code tier} while a higher tier was already available globally
+         */
+        public long executionsBelowGlobal(int tier) {
+            return totals.belowGlobal[tier];
+        }
+
+        public long compilations(int tier) {
+            return Log2Histogram.total(totals.compile[tier]);
+        }
+
+        /**
+         * @return upper bound of quantile {@code q} of compilation duration at {@code tier} in nanoseconds
+         */
+        public long compileNanos(int tier, double q) {
+            return Log2Histogram.quantile(totals.compile[tier], q);
+        }
+
+        /**
+         * @return number of compile requests queued at the moment of the snapshot
+         */
+        public int queueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return upper bound of quantile {@code q} of queue depth observed by compiler threads
+         */
+        public long queueDepth(double q) {
+            return Log2Histogram.quantile(totals.queueDepth, q);
+        }
+
+        /**
+         * @return L1 compilations which were skipped in favour of L2
+         */
+        public long skippedL1() {
+            return totals.skippedL1;
+        }
+
+        /**
+         * @return number of compiler threads at the moment of the snapshot
+         */
+        public int workers() {
+            return workers;
+        }
+
+        /**
+         * @return number of compiler threads the pool was aiming for at the moment of the snapshot
+         */
+        public int targetWorkers() {
+            return targetWorkers;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(String.format("dispatch: %d samples, p50 < %d ns, p99 < %d ns, max < %d ns%n", dispatchSamples(),
+                    dispatchNanos(0.5), dispatchNanos(0.99), dispatchNanos(1)));
+            for (int tier = 0; tier < TIERS; tier++) {
+                sb.append(String.format("tier %d: %d executions, %d below global%n", tier, executions(tier),
+                        executionsBelowGlobal(tier)));
+            }
+            for (int tier = TieredCode.L1; tier < TIERS; tier++) {
+                sb.append(String.format("L%d compile: %d, p50 < %d us, max < %d us%n", tier, compilations(tier),
+                        compileNanos(tier, 0.5) / 1_000, compileNanos(tier, 1) / 1_000));
+            }
+            sb.append(String.format("skipped L1 compilations: %d%n", skippedL1()));
+            sb.append(String.format("queue: %d now, p99 < %d%n", queueDepth, queueDepth(0.99)));
+            sb.append(String.format("compiler threads: %d, target %d", workers, targetWorkers));
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.nsu.syspro.parprog.external.CompilationEngine;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Global (per {@link CompilationEngine}) part of the JIT subsystem shared by all {@link SolutionThread}s:
+ * {@link CodeCache}, {@link CompilationStates}, {@link CompilerBroker}, {@link HotnessAggregator}, {@link JitMetrics}
+ * and {@link Deoptimizer}.
+ * <br>
+ * Runtime is looked up once in the {@link SolutionThread} constructor, so the registry lock is never taken inside
+ * `executeMethod`. The registry holds runtimes weakly: once all user threads and idle compiler threads are gone, the
+ * runtime is garbage collected.
+ * <br>
+ * A fresh runtime starts compiling methods from the persisted {@link WarmProfile} right away, if one is configured.
+ * <br>
+ * Every knob is set by the {@link OptimizationGoal} of the runtime, chosen by the thread which creates it. Single knobs
+ * override the goal: {@code -Djit.codeCacheBytes=<budget>}, {@code -Djit.compilerWorkers=<limit>} (clamped to
+ * {@code compilationThreadBound}) and {@code -Djit.adaptiveWorkers=false} to pin the compiler pool at its limit.
+ * The tiering {@link #policy} is runtime-wide as well: {@link HotnessAggregator} promotes by it, so every thread counts
+ * by it.
+ * {@code -Djit.deoptimization=true} allows code invalidation, it is independent of the goal.
+ */
+public final class JitRuntime {
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final long COMPILER_KEEP_ALIVE_MILLIS = 1_000;
+    private static final long QUEUE_AGING_PER_MILLI = 1_000;
+    private static final int COMPILE_BATCH = 8;
+    private static final long HOTNESS_AGGREGATION_PERIOD_MILLIS = 10;
+
+    private static final Map<CompilationEngine, WeakReference<JitRuntime>> runtimes = new WeakHashMap<>();
+
+    public final OptimizationGoal goal;
+    public final TieredPolicy policy;
+    public final CodeCache cache;
+    public final CompilationStates states = new CompilationStates();
+    public final CompilerBroker broker;
+    public final JitMetrics metrics;
+    public final Deoptimizer deoptimizer;
+    final HotnessAggregator hotness;
+
+    private JitRuntime(CompilationEngine compiler, int compilationThreadBound, OptimizationGoal goal,
+                       TieredPolicy policy) {
+        this.goal = goal;
+        this.policy = policy;
+        this.cache = new CodeCache(goal.codeCacheBytes());
+        this.broker = new CompilerBroker(compiler, cache, compilationThreadBound, QUEUE_CAPACITY, COMPILER_KEEP_ALIVE_MILLIS,
+                QUEUE_AGING_PER_MILLI, COMPILE_BATCH);
+        this.metrics = broker.metrics();
+        this.deoptimizer = new Deoptimizer(Boolean.getBoolean(Deoptimizer.PROPERTY), cache, states);
+        broker.setTierSkipping(goal.tierSkipping() ? policy : null);
+        broker.setWorkerLimit(goal.compilerWorkers(compilationThreadBound));
+        broker.setAdaptive(goal.adaptiveWorkers());
+        this.hotness = new HotnessAggregator(broker, policy, HOTNESS_AGGREGATION_PERIOD_MILLIS);
+    }
+
+    /**
+     * @return runtime of {@code compiler}, a fresh one runs with the {@link OptimizationGoal#configured()} goal
+     */
+    public static JitRuntime of(CompilationEngine compiler, int compilationThreadBound) {
+        return of(compiler, compilationThreadBound, null, null);
+    }
+
+    /**
+     * @param goal goal of a fresh runtime, {@code null} for the configured one
+     * @throws IllegalStateException if the runtime of {@code compiler} already runs with another goal
+     */
+    public static JitRuntime of(CompilationEngine compiler, int compilationThreadBound, OptimizationGoal goal) {
+        return of(compiler, compilationThreadBound, goal, null);
+    }
+
+    /**
+     * @param policy policy of a fresh runtime, {@code null} for the one of its goal; an existing runtime accepts only
+     *               its own instance
+     * @throws IllegalStateException if the runtime of {@code compiler} already runs with another goal or policy
+     */
+    static JitRuntime of(CompilationEngine compiler, int compilationThreadBound, OptimizationGoal goal,
+                         TieredPolicy policy) {
+        assert compilationThreadBound >= 2;
+        synchronized (runtimes) {
+            final WeakReference<JitRuntime> ref = runtimes.get(compiler);
+            final JitRuntime existing = (ref == null) ? null : ref.get();
+            if (existing != null) {
+                assert existing.broker.maxWorkers() == compilationThreadBound;
+                if (goal != null && goal != existing.goal) {
+                    throw new IllegalStateException("JIT runtime already runs with goal " + existing.goal + ", not " + goal);
+                }
+                if (policy != null && policy != existing.policy) {
+                    throw new IllegalStateException("JIT runtime already runs with policy " + existing.policy
+                            + ", not " + policy);
+                }
+                return existing;
+            }
+            final OptimizationGoal freshGoal = (goal == null) ? OptimizationGoal.configured() : goal;
+            final JitRuntime fresh = new JitRuntime(compiler, compilationThreadBound, freshGoal,
+                    (policy == null) ? freshGoal.policy() : policy);
+            runtimes.put(compiler, new WeakReference<>(fresh));
+            WarmProfile.install(fresh);
+            return fresh;
+        }
+    }
+}
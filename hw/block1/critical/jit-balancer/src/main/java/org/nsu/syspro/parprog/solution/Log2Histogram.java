@@ -0,0 +1,77 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Single-writer histogram with power-of-two buckets: bucket {@code b > 0} counts values in {@code [2^(b-1), 2^b)},
+ * bucket {@code 0} counts zeros and negatives.
+ * <br>
+ * The owner increments buckets with opaque stores (plain stores on x86, but never torn), any thread may read them
+ * concurrently and gets a slightly stale but consistent-per-bucket picture. Precision is a factor of two, which is
+ * enough to tell microseconds from milliseconds.
+ */
+final class Log2Histogram {
+    static final int BUCKETS = 64;
+
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] counts = new long[BUCKETS];
+
+    static int bucket(long value) {
+        return (value <= 0) ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * @return exclusive upper bound of values counted by bucket {@code b}
+     */
+    static long upperBound(int b) {
+        return (b >= BUCKETS - 1) ? Long.MAX_VALUE : (1L << b);
+    }
+
+    /**
+     * Owner only.
+     */
+    void record(long value) {
+        final int b = bucket(value);
+        COUNTS.setOpaque(counts, b, counts[b] + 1);
+    }
+
+    /**
+     * Safe from any thread.
+     */
+    void addTo(long[] into) {
+        assert into.length == BUCKETS;
+        for (int b = 0; b < BUCKETS; b++) {
+            into[b] += (long) COUNTS.getOpaque(counts, b);
+        }
+    }
+
+    static long total(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return upper bound of the bucket which contains quantile {@code q} of {@code counts}, {@code 0} if empty
+     */
+    static long quantile(long[] counts, double q) {
+        assert q >= 0 && q <= 1;
+        final long total = total(counts);
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return upperBound(b);
+            }
+        }
+        throw new AssertionError("unreachable");
+    }
+}
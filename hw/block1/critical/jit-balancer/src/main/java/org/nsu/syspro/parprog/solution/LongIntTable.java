@@ -0,0 +1,156 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.util.Arrays;
+
+/**
+ * Thread-unsafe open-addressing (linear probing) hash table from primitive {@code long} keys to {@code int} values.
+ * <br>
+ * Intended for thread-local data of {@link org.nsu.syspro.parprog.UserThread}s, e.g. per-method invocation counters.
+ * Keys and values live in two parallel primitive arrays, so once the table has grown to the working set, {@link #get},
+ * {@link #put} and {@link #increment} never allocate. Key {@code 0} is used as the empty marker, real key {@code 0} is
+ * stored aside.
+ * <br>
+ * Weak point: no removal, thread-local tables only grow. This is fine thanks to `Limited-methods`.
+ */
+public final class LongIntTable {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int shift;
+    private int size;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntTable() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongIntTable(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize) * 2 - 1) * 2);
+    }
+
+    private void allocate(int capacity) {
+        assert Integer.bitCount(capacity) == 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private int indexOf(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift) & mask;
+    }
+
+    /**
+     * @return index of {@code key} or {@code -(insertionPoint + 1)} if it is absent
+     */
+    private int find(long key) {
+        assert key != 0;
+        int i = indexOf(key);
+        while (true) {
+            final long k = keys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == 0) {
+                return -(i + 1);
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return (key == 0) ? hasZeroKey : find(key) >= 0;
+    }
+
+    public int get(long key, int defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        final int i = find(key);
+        return (i >= 0) ? values[i] : defaultValue;
+    }
+
+    public void put(long key, int value) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+        final int i = find(key);
+        if (i >= 0) {
+            values[i] = value;
+            return;
+        }
+        insert(-(i + 1), key, value);
+    }
+
+    /**
+     * Adds one to the value of {@code key} (absent keys count as {@code 0}). Saturates at {@link Integer#MAX_VALUE},
+     * so a long-running counter never wraps around to "cold".
+     *
+     * @return value after increment
+     */
+    public int increment(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return zeroValue = saturatedIncrement(zeroValue);
+        }
+        final int i = find(key);
+        if (i >= 0) {
+            return values[i] = saturatedIncrement(values[i]);
+        }
+        insert(-(i + 1), key, 1);
+        return 1;
+    }
+
+    private static int saturatedIncrement(int value) {
+        return (value == Integer.MAX_VALUE) ? value : value + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void insert(int i, long key, int value) {
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        if (size > (mask + 1) / 2) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate((mask + 1) * 2);
+        for (int j = 0; j < oldKeys.length; j++) {
+            final long k = oldKeys[j];
+            if (k != 0) {
+                final int i = -(find(k) + 1);
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Removes all keys but keeps allocated memory.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+}
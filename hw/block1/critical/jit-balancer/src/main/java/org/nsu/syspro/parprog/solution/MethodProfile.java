@@ -0,0 +1,92 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.nsu.syspro.parprog.external.MethodID;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Thread-private view of a method owned by a single {@link SolutionThread}: best known code and counters.
+ * <br>
+ * All fields are plain and written by the owner only. The only cross-thread channel is {@link #publish()}: the owner
+ * periodically stores its invocation counter with release semantics (a plain store on x86), and
+ * {@link HotnessAggregator} reads it with acquire semantics. No shared atomic is touched on the invoke path.
+ */
+final class MethodProfile {
+    private static final VarHandle PUBLISHED;
+
+    static {
+        try {
+            PUBLISHED = MethodHandles.lookup().findVarHandle(MethodProfile.class, "published", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static final int MAX_CALLEES = 8;
+
+    final MethodID method;
+    final MethodState state;
+    TieredCode code; // null means interpretation
+    long seenSnapshot = -1; // version of CodeSnapshot which was already consulted for this method
+    int invocations; // exact, used for deadlines
+    long hotness; // decayed and maybe sampled, used by policy
+    long decayedAtNanos;
+    @SuppressWarnings("unused") // accessed via PUBLISHED
+    private int published;
+    // call graph edges seen by the owner: the first MAX_CALLEES distinct callees, the rest is ignored
+    private MethodProfile lastCallee;
+    private MethodProfile[] callees; // allocated on the first nested call
+    private int calleeCount;
+
+    MethodProfile(MethodID method, MethodState state, long nowNanos) {
+        assert method.id() == state.id;
+        this.method = method;
+        this.state = state;
+        this.decayedAtNanos = nowNanos;
+    }
+
+    int tier() {
+        return (code == null) ? TieredCode.INTERPRETED : code.tier;
+    }
+
+    /**
+     * @return {@code true} if the edge is new
+     */
+    boolean addCallee(MethodProfile callee) {
+        if (lastCallee == callee) {
+            return false; // monomorphic call site: one comparison
+        }
+        lastCallee = callee;
+        for (int i = 0; i < calleeCount; i++) {
+            if (callees[i] == callee) {
+                return false;
+            }
+        }
+        if (calleeCount == MAX_CALLEES) {
+            return false;
+        }
+        if (callees == null) {
+            callees = new MethodProfile[MAX_CALLEES];
+        }
+        callees[calleeCount++] = callee;
+        return true;
+    }
+
+    int calleeCount() {
+        return calleeCount;
+    }
+
+    MethodProfile callee(int index) {
+        assert index < calleeCount;
+        return callees[index];
+    }
+
+    void publish() {
+        PUBLISHED.setRelease(this, invocations);
+    }
+
+    int published() {
+        return (int) PUBLISHED.getAcquire(this);
+    }
+}
@@ -0,0 +1,391 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compilation state of a single method packed into one {@code long} word which is only changed by CAS.
+ * <br>
+ * Word layout:
+ * <ul>
+ *     <li> bits 0..3: phase, one of {@link #NEVER_COMPILED}, {@link #L1_QUEUED}, {@link #L1_READY}, {@link #L2_QUEUED}, {@link #L2_READY}
+ *     <li> bit 4: the method went past L1 without L1 code: it was evicted from {@link CodeCache} ({@link #evictL1()}) or
+ *     skipped in favour of L2 ({@link #tryUpgradeL1ToL2()}), cleared by the next completion
+ *     <li> bit 5: the compilation in flight was invalidated ({@link #invalidate()}): its code is never published, its
+ *     completion or cancellation starts the method over
+ *     <li> bit 6: the compilation engine threw ({@link #failL1()}, {@link #failL2()}): the method is never compiled again
+ *     <li> bits 8..11: number of granted {@code compile_l1} calls (never more than {@link #MAX_L1_COMPILATIONS})
+ *     <li> bits 12..15: number of granted {@code compile_l2} calls (never more than {@link #MAX_L2_COMPILATIONS})
+ * </ul>
+ * Every transition is a single CAS, so exactly one thread wins it. Winning {@link #tryQueueL1()} or {@link #tryQueueL2()}
+ * is a permission to compile, which makes `CPU-bound-compilation` a local property of this class. Readers decide what to do
+ * with a single volatile read of {@link #word()}. In the deoptimization mode ({@link Deoptimizer}) an invalidated method
+ * gets fresh limits: `CPU-bound-compilation` holds between invalidations.
+ * <br>
+ * Threads which are not allowed to make progress without compiled code (`Eventual-per-thread-progress-*`) could block in
+ * {@link #awaitChange(long, long)}. This is the only blocking operation here, it is never used on the common path.
+ * It is built on {@link ReentrantLock} rather than monitors, so a blocked virtual thread never pins its carrier, and
+ * transitions take the lock only if somebody actually waits.
+ */
+public final class MethodState {
+    public static final int NEVER_COMPILED = 0;
+    public static final int L1_QUEUED = 1;
+    public static final int L1_READY = 2;
+    public static final int L2_QUEUED = 3;
+    public static final int L2_READY = 4;
+
+    public static final int MAX_L1_COMPILATIONS = 2;
+    public static final int MAX_L2_COMPILATIONS = 1;
+
+    private static final long PHASE_MASK = 0xFL;
+    private static final long L1_EVICTED_BIT = 1L << 4;
+    private static final long STALE_BIT = 1L << 5;
+    private static final long FAILED_BIT = 1L << 6;
+    private static final int L1_SHIFT = 8;
+    private static final int L2_SHIFT = 12;
+    private static final long COUNT_MASK = 0xFL;
+
+    private static final VarHandle WORD;
+    private static final VarHandle HEAT;
+
+    static {
+        try {
+            WORD = MethodHandles.lookup().findVarHandle(MethodState.class, "word", long.class);
+            HEAT = MethodHandles.lookup().findVarHandle(MethodState.class, "heat", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public final long id;
+    @SuppressWarnings("unused") // accessed via WORD
+    private volatile long word;
+    @SuppressWarnings("unused") // accessed via HEAT
+    private volatile long heat;
+    private volatile long globalHotness; // single writer: HotnessAggregator
+    private volatile long interpretCost; // sampled by user threads, see CostModel
+    private volatile long l1Cost;
+    private volatile int waiters; // written under waitLock
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition changed = waitLock.newCondition();
+
+    // scratch space of HotnessAggregator, never touched by other threads
+    long aggregate;
+    long aggregateRound = -1;
+    long retiredHotness;
+
+    // scratch space of CodeCache, guarded by its write lock
+    boolean inClock;
+    long clockHotness;
+
+    public MethodState(long id) {
+        this.id = id;
+    }
+
+    public long word() {
+        return word;
+    }
+
+    /**
+     * @return extra compilation priority, e.g. reported by threads blocked on this method
+     */
+    public long heat() {
+        return heat;
+    }
+
+    /**
+     * Shared counter: must be touched rarely.
+     */
+    public void addHeat(long delta) {
+        HEAT.getAndAdd(this, delta);
+    }
+
+    /**
+     * @return approximate number of invocations in all threads, see {@link HotnessAggregator}
+     */
+    public long globalHotness() {
+        return globalHotness;
+    }
+
+    void publishGlobalHotness(long value) {
+        globalHotness = value;
+    }
+
+    /**
+     * @param tier {@link TieredCode#INTERPRETED} or {@link TieredCode#L1}
+     * @return average execution time in nanoseconds, {@code 0} if never measured
+     */
+    public long executionCost(int tier) {
+        assert tier == TieredCode.INTERPRETED || tier == TieredCode.L1;
+        return (tier == TieredCode.INTERPRETED) ? interpretCost : l1Cost;
+    }
+
+    /**
+     * Blends a sampled execution time into the average. Racy on purpose: samples are rare, a lost one does not matter.
+     */
+    public void recordExecutionCost(int tier, long nanos) {
+        assert tier == TieredCode.INTERPRETED || tier == TieredCode.L1;
+        if (tier == TieredCode.INTERPRETED) {
+            interpretCost = CostModel.blend(interpretCost, nanos);
+        } else {
+            l1Cost = CostModel.blend(l1Cost, nanos);
+        }
+    }
+
+    public static int phase(long word) {
+        return (int) (word & PHASE_MASK);
+    }
+
+    public static int l1Compilations(long word) {
+        return (int) ((word >>> L1_SHIFT) & COUNT_MASK);
+    }
+
+    public static int l2Compilations(long word) {
+        return (int) ((word >>> L2_SHIFT) & COUNT_MASK);
+    }
+
+    public static boolean l1Evicted(long word) {
+        return (word & L1_EVICTED_BIT) != 0;
+    }
+
+    public static boolean stale(long word) {
+        return (word & STALE_BIT) != 0;
+    }
+
+    /**
+     * @return {@code true} if the engine threw on this method: no tier above {@link #readyTier} will ever be ready
+     */
+    public static boolean failed(long word) {
+        return (word & FAILED_BIT) != 0;
+    }
+
+    /**
+     * @return highest tier which is already compiled according to this word
+     */
+    public static int readyTier(long word) {
+        switch (phase(word)) {
+            case L2_READY:
+                return TieredCode.L2;
+            case L1_READY:
+                return TieredCode.L1;
+            case L2_QUEUED:
+                return l1Evicted(word) ? TieredCode.INTERPRETED : TieredCode.L1;
+            default:
+                return TieredCode.INTERPRETED;
+        }
+    }
+
+    private static long pack(int phase, int l1, int l2, boolean l1Evicted) {
+        assert 0 <= phase && phase <= L2_READY;
+        assert l1 <= MAX_L1_COMPILATIONS && l2 <= MAX_L2_COMPILATIONS;
+        return phase | ((long) l1 << L1_SHIFT) | ((long) l2 << L2_SHIFT) | (l1Evicted ? L1_EVICTED_BIT : 0);
+    }
+
+    private boolean cas(long expected, long update) {
+        return WORD.compareAndSet(this, expected, update);
+    }
+
+    /**
+     * {@link #NEVER_COMPILED} -> {@link #L1_QUEUED}. The winner must eventually call {@link #completeL1()} or {@link #cancelL1()}.
+     *
+     * @return {@code true} if this thread won the transition and is allowed to call {@code compile_l1} once
+     */
+    public boolean tryQueueL1() {
+        while (true) {
+            final long w = word;
+            final int l1 = l1Compilations(w);
+            if (phase(w) != NEVER_COMPILED || l1 >= MAX_L1_COMPILATIONS || failed(w)) {
+                return false;
+            }
+            if (cas(w, pack(L1_QUEUED, l1 + 1, l2Compilations(w), l1Evicted(w)))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * {@link #L1_READY} (or evicted {@link #NEVER_COMPILED}) -> {@link #L2_QUEUED}. The winner must eventually call {@link #completeL2()} or {@link #cancelL2()}.
+     *
+     * @return {@code true} if this thread won the transition and is allowed to call {@code compile_l2} once
+     */
+    public boolean tryQueueL2() {
+        while (true) {
+            final long w = word;
+            final int l2 = l2Compilations(w);
+            final boolean ready = phase(w) == L1_READY || (phase(w) == NEVER_COMPILED && l1Evicted(w));
+            if (!ready || l2 >= MAX_L2_COMPILATIONS || failed(w)) {
+                return false;
+            }
+            if (cas(w, pack(L2_QUEUED, l1Compilations(w), l2 + 1, l1Evicted(w)))) {
+                return true;
+            }
+        }
+    }
+
+    public void completeL1() {
+        transition(L1_QUEUED, L1_READY, 0, 0, false);
+    }
+
+    public void completeL2() {
+        transition(L2_QUEUED, L2_READY, 0, 0, false);
+    }
+
+    /**
+     * Gives back the permission obtained by {@link #tryQueueL1()} if {@code compile_l1} was never called.
+     */
+    public void cancelL1() {
+        transition(L1_QUEUED, NEVER_COMPILED, -1, 0, false);
+    }
+
+    /**
+     * Gives back the permission obtained by {@link #tryQueueL2()} if {@code compile_l2} was never called.
+     */
+    public void cancelL2() {
+        transition(L2_QUEUED, L1_READY, 0, -1, false);
+    }
+
+    /**
+     * Ends the permission obtained by {@link #tryQueueL1()} after {@code compile_l1} threw. The call is spent, and the
+     * method is never queued again: a failing engine is not called over and over.
+     */
+    public void failL1() {
+        transition(L1_QUEUED, NEVER_COMPILED, 0, 0, true);
+    }
+
+    /**
+     * Same as {@link #failL1()} for {@code compile_l2}, L1 code stays in use.
+     */
+    public void failL2() {
+        transition(L2_QUEUED, L1_READY, 0, 0, true);
+    }
+
+    /**
+     * {@link #L1_READY} -> evicted {@link #NEVER_COMPILED}, called by {@link CodeCache} right before it drops L1 code.
+     * L1 code could be evicted only if it could be compiled again.
+     *
+     * @return {@code true} if this thread won the transition
+     */
+    boolean evictL1() {
+        while (true) {
+            final long w = word;
+            if (phase(w) != L1_READY || l1Compilations(w) >= MAX_L1_COMPILATIONS || failed(w)) {
+                return false; // L1 code of a failed method could not be compiled again
+            }
+            if (cas(w, pack(NEVER_COMPILED, l1Compilations(w), l2Compilations(w), true))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * {@link #L1_QUEUED} -> {@link #L2_QUEUED} without L1 code, called by the owner of the L1 permission which has not
+     * called {@code compile_l1} yet. The L1 permission is given back, so L1 could still be compiled if L2 is cancelled.
+     * From now on the owner must eventually call {@link #completeL2()} or {@link #cancelL2()}.
+     *
+     * @return {@code false} if L2 compilation is not allowed anymore, the caller still owns the L1 permission then
+     */
+    boolean tryUpgradeL1ToL2() {
+        while (true) {
+            final long w = word;
+            assert phase(w) == L1_QUEUED;
+            final int l2 = l2Compilations(w);
+            if (l2 >= MAX_L2_COMPILATIONS || stale(w)) {
+                return false;
+            }
+            if (cas(w, pack(L2_QUEUED, l1Compilations(w) - 1, l2 + 1, true))) {
+                signalWaiters();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Forgets all compiled code of the method: it starts over from {@link #NEVER_COMPILED} with fresh compilation
+     * limits. A compilation in flight is marked stale instead, its owner starts the method over when it completes or
+     * cancels. Called by {@link CodeCache} under its write lock, see {@link Deoptimizer}.
+     */
+    void invalidate() {
+        while (true) {
+            final long w = word;
+            final int phase = phase(w);
+            final long update;
+            if (phase == L1_QUEUED || phase == L2_QUEUED) {
+                // L1 code is gone as well: nobody may wait for it while L2 is queued
+                update = w | STALE_BIT | L1_EVICTED_BIT;
+            } else {
+                update = pack(NEVER_COMPILED, 0, 0, false);
+            }
+            if (w == update || cas(w, update)) {
+                break;
+            }
+        }
+        signalWaiters();
+    }
+
+    private void transition(int from, int to, int l1Delta, int l2Delta, boolean fail) {
+        while (true) {
+            final long w = word;
+            if (phase(w) != from) {
+                // only the winner of the queue transition owns the method until it is completed or cancelled
+                throw new IllegalStateException("MethodID(" + id + ") expected phase " + from + ", found " + phase(w));
+            }
+            if (stale(w)) {
+                if (cas(w, pack(NEVER_COMPILED, 0, 0, false))) {
+                    break;
+                }
+                continue;
+            }
+            // cancelled L2 compilation of an evicted method has no L1 code to fall back to
+            final int target = (from == L2_QUEUED && to == L1_READY && l1Evicted(w)) ? NEVER_COMPILED : to;
+            // completion puts code back into the cache
+            final boolean evicted = l1Evicted(w) && target == NEVER_COMPILED;
+            final long update = pack(target, l1Compilations(w) + l1Delta, l2Compilations(w) + l2Delta, evicted);
+            if (cas(w, fail ? update | FAILED_BIT : update)) {
+                break;
+            }
+        }
+        signalWaiters();
+    }
+
+    private void signalWaiters() {
+        // Dekker-style handshake with `awaitChange`: either the waiter sees the new word or we see the waiter
+        if (waiters > 0) {
+            waitLock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Blocks until the state differs from {@code seen} or timeout expires. Spurious wake-ups are possible.
+     */
+    public void awaitChange(long seen, long timeoutMillis) throws InterruptedException {
+        assert timeoutMillis > 0;
+        waitLock.lock();
+        try {
+            waiters++;
+            try {
+                if (word == seen) {
+                    changed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                waiters--;
+            }
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final long w = word;
+        return String.format("MethodState(%d, phase=%d, l1=%d, l2=%d, evicted=%b, stale=%b, failed=%b)", id,
+                phase(w), l1Compilations(w), l2Compilations(w), l1Evicted(w), stale(w), failed(w));
+    }
+}
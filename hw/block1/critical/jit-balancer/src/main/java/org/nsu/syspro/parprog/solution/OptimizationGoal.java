@@ -0,0 +1,115 @@
+package org.nsu.syspro.parprog.solution;
+
+/**
+ * What the JIT subsystem leans towards. A goal switches every tuning knob of {@link JitRuntime} at once: tiering
+ * thresholds ({@link TieredPolicy}), {@link CodeCache} budget, compiler pool size and L1 skipping.
+ * <ul>
+ *     <li> {@link #BALANCED}: the default
+ *     <li> {@link #HOT_PATH}: for steady state, hot methods go to L2 early, compiled code is never evicted and the
+ *     compiler pool gives cores back to user threads once the code is compiled
+ *     <li> {@link #WALL_CLOCK}: for a short run, little time in the interpreter and a fully staffed compiler pool which
+ *     never shrinks under load
+ *     <li> {@link #CPU_CYCLES}: for fewer CPU cycles, two compiler threads compile only what pays off
+ *     ({@link CostModel})
+ *     <li> {@link #RAM_FOOTPRINT}: for less memory, small code cache and only methods which stay hot are compiled
+ * </ul>
+ * A goal only sets knobs, whether it wins on its metric depends on the workload. In {@code GoalBenchmark} of the JMH
+ * module every goal wins on its own metric: {@link #WALL_CLOCK} in a batch job which keeps every thread busy,
+ * {@link #CPU_CYCLES} in a service whose threads wait for I/O and whose L2 compilations are expensive, the other two
+ * in both. On a single core a batch job has no idle time, so CPU time follows wall-clock time and {@link #WALL_CLOCK}
+ * wins both there.
+ * "No duplicate compilations" and "bounded concurrent compilations" are not goals: `CPU-bound-compilation` and
+ * `Thread-bound-compilation` hold under every goal.
+ * <br>
+ * Selected by {@code -Djit.goal=balanced|hot-path|wall-clock|cpu-cycles|ram-footprint} or per runtime with
+ * {@link SolutionThread#SolutionThread(int, org.nsu.syspro.parprog.external.ExecutionEngine,
+ * org.nsu.syspro.parprog.external.CompilationEngine, Runnable, OptimizationGoal)}. Single knobs ({@code jit.policy},
+ * {@code jit.codeCacheBytes}, {@code jit.compilerWorkers}, {@code jit.adaptiveWorkers}) override the goal if set.
+ */
+public enum OptimizationGoal {
+    BALANCED("balanced", "balanced", 64L << 20, Integer.MAX_VALUE, true, true),
+    // L1 skipping: a method which is hot enough goes straight to L2
+    HOT_PATH("hot-path", "throughput-first", CodeCache.UNBOUNDED, Integer.MAX_VALUE, true, true),
+    // no L1 skipping: L1 now is worth more than L2 later
+    WALL_CLOCK("wall-clock", "latency-first", 64L << 20, Integer.MAX_VALUE, false, false),
+    // L1 skipping saves a compilation, the second worker is the L1 lane: a long L2 compilation does not hold up L1
+    CPU_CYCLES("cpu-cycles", "cpu-cycles", 64L << 20, 2, false, true),
+    // L1 skipping keeps one version of code instead of two
+    RAM_FOOTPRINT("ram-footprint", "cpu-frugal", 1L << 20, 1, false, true);
+
+    public final String id;
+    private final String policy;
+    private final long codeCacheBytes;
+    private final int compilerWorkers;
+    private final boolean adaptiveWorkers;
+    private final boolean tierSkipping;
+
+    OptimizationGoal(String id, String policy, long codeCacheBytes, int compilerWorkers, boolean adaptiveWorkers,
+                     boolean tierSkipping) {
+        this.id = id;
+        this.policy = policy;
+        this.codeCacheBytes = codeCacheBytes;
+        this.compilerWorkers = compilerWorkers;
+        this.adaptiveWorkers = adaptiveWorkers;
+        this.tierSkipping = tierSkipping;
+    }
+
+    public static OptimizationGoal named(String id) {
+        for (OptimizationGoal goal : values()) {
+            if (goal.id.equals(id)) {
+                return goal;
+            }
+        }
+        throw new IllegalArgumentException("Unknown jit.goal: " + id);
+    }
+
+    /**
+     * @return goal selected by {@code -Djit.goal}, {@link #BALANCED} if not set
+     */
+    public static OptimizationGoal configured() {
+        return named(System.getProperty("jit.goal", BALANCED.id));
+    }
+
+    /**
+     * @return tiering preset of the goal, {@code -Djit.policy} takes precedence
+     */
+    public TieredPolicy policy() {
+        return TieredPolicy.named(System.getProperty("jit.policy", policy));
+    }
+
+    /**
+     * @return {@link CodeCache} budget, {@code -Djit.codeCacheBytes} takes precedence
+     */
+    public long codeCacheBytes() {
+        return Long.getLong("jit.codeCacheBytes", codeCacheBytes);
+    }
+
+    /**
+     * @return compiler pool limit within {@code [1, compilationThreadBound]}, {@code -Djit.compilerWorkers} takes
+     * precedence
+     */
+    public int compilerWorkers(int compilationThreadBound) {
+        final int workers = Integer.getInteger("jit.compilerWorkers", compilerWorkers);
+        return Math.max(1, Math.min(workers, compilationThreadBound));
+    }
+
+    /**
+     * @return whether the compiler pool follows CPU load ({@link CompilerBroker#setAdaptive}),
+     * {@code -Djit.adaptiveWorkers} takes precedence
+     */
+    public boolean adaptiveWorkers() {
+        return Boolean.parseBoolean(System.getProperty("jit.adaptiveWorkers", Boolean.toString(adaptiveWorkers)));
+    }
+
+    /**
+     * @return whether queued L1 compilations of L2-hot methods are skipped ({@link CompilerBroker#setTierSkipping})
+     */
+    public boolean tierSkipping() {
+        return tierSkipping;
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
@@ -3,26 +3,352 @@ package org.nsu.syspro.parprog.solution;
 import org.nsu.syspro.parprog.UserThread;
 import org.nsu.syspro.parprog.external.*;
 
-import java.util.*;
-import java.util.concurrent.*;
+import java.util.Arrays;
 
+/**
+ * Tiered JIT protocol.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> Every method has a global {@link MethodState} (single CAS word) and at most one L1 and one L2 compiled version
+ *     in the global {@link CodeCache}. Winning a {@link MethodState} transition is the only way to get a compilation,
+ *     so `CPU-bound-compilation` holds.
+ *     <li> All compilations are done by {@link CompilerBroker} threads, bounded by {@link #compilationThreadBound}
+ *     (`Heavy-compilation-offloading`, `Thread-bound-compilation`).
+ *     <li> Each thread keeps a private {@link MethodProfile} per method: best known code and invocation counters. Local tier
+ *     never decreases (`Per-thread-monotonicity`) unless code is invalidated. Until the top tier is reached, every
+ *     invocation does one volatile read of {@link CodeCache#snapshot()} and looks the method up in the immutable
+ *     {@link CodeSnapshot} only if its version changed.
+ *     This picks up code compiled by anybody else (`Weak-global-caching`) and is wait-free (`Weak-worst-case-latency`).
+ *     <li> Compilation is requested when {@link TieredPolicy} says so, judging by per-thread hotness. The policy and
+ *     the rest of the tuning come from one {@link OptimizationGoal}. Hotness may be
+ *     sampled ({@link HotnessSampler}), but the invocation counter used for deadlines is always exact.
+ *     <li> Every {@link #PUBLISH_INTERVAL} invocations a thread publishes its counter into its own {@link HotnessStripe}.
+ *     {@link HotnessAggregator} sums stripes in background, orders the compile queue by the global sum and requests
+ *     compilation of methods which are hot globally but lukewarm in every single thread.
+ *     <li> A thread blocks only if it is about to break `Eventual-per-thread-progress-*` ({@link #L1_DEADLINE} /
+ *     {@link #L2_DEADLINE}) and compilation is still not finished.
+ *     <li> A thread joins the runtime-wide registries right before its task starts, on the thread which runs it, so a
+ *     thread which is never started is never registered and no call waits for a registry lock. When its task is over,
+ *     a thread drops its private tables at once: pools churn threads but keep the objects.
+ *     <li> With {@code -Djit.trace=<file>} every call is recorded for later replay, see {@link TraceRecorder}.
+ *     <li> The first execution of a method at a new tier is reported to JFR, see {@link JitEvents}.
+ *     <li> Dispatch latency and per-tier executions are reported into a thread-private {@link JitMetrics.Recorder},
+ *     see {@link JitRuntime#metrics}.
+ *     <li> Nested calls are pushed on a thread-private shadow stack, so every thread learns caller -> callee edges
+ *     ({@link MethodProfile#addCallee}). As soon as a caller gets compiled code, its callees are compiled up to the same
+ *     tier ahead of their own thresholds. Allocation happens only when the stack grows or a method calls something
+ *     for the first time.
+ *     <li> In the deoptimization mode ({@link Deoptimizer}) every call also checks the invalidation epoch and drops
+ *     invalidated code, so the local tier may go down. Otherwise the mode costs nothing.
+ *     <li> If the policy has a {@link CostModel}, executions below L2 are timed once per
+ *     {@link CostModel#SAMPLE_INTERVAL} invocations and a promotion is requested only if the model approves it.
+ * </ul>
+ * Weak points:
+ * <ul>
+ *     <li> Global hotness lags behind by an aggregation period.
+ *     <li> Blocking at the deadline breaks `Weak-worst-case-latency` if compilation is slow. This is unavoidable:
+ *     `Eventual-per-thread-progress-1` with arbitrary long compilation contradicts `Weak-worst-case-latency`.
+ *     <li> A method the engine fails to compile ({@link MethodState#failed}) stays at its tier past the deadline.
+ * </ul>
+ */
 public class SolutionThread extends UserThread {
+    static final int L1_DEADLINE = 9_000;
+    static final int L2_DEADLINE = 90_000;
+    static final int PUBLISH_INTERVAL = 1 << 6;
+    static final long BLOCKED_HEAT = 1L << 40; // blocked thread is the worst case latency, such request jumps the queue
 
-    // TODO: add fields here!
+    private static final long AWAIT_SLICE_MILLIS = 10;
+
+    private final JitRuntime runtime;
+    private final TieredPolicy policy;
+    private final HotnessSampler sampler;
+    private final CostModel costModel; // null unless the policy is cost-aware
+
+    // thread-private, accessed from `executeMethod` only: method id -> index in `stripe`, no boxing on lookup
+    private LongIntTable profileIndex = new LongIntTable();
+    private final HotnessStripe stripe = new HotnessStripe(this);
+    private final TraceRecorder.ThreadLog trace; // null unless tracing is enabled
+    private final JitMetrics.Recorder metrics;
+    private final Deoptimizer.Participant deopt; // null unless the deoptimization mode is on
+    // shadow stack of methods being executed by this thread, nested calls are edges of the call graph
+    private MethodProfile[] frames = new MethodProfile[16];
+    private int depth;
 
     public SolutionThread(int compilationThreadBound, ExecutionEngine exec, CompilationEngine compiler, Runnable r) {
-        super(compilationThreadBound, exec, compiler, r);
-        // TODO: initialize fields!
+        this(compilationThreadBound, exec, compiler, r, JitRuntime.of(compiler, compilationThreadBound));
     }
 
+    /**
+     * @throws IllegalStateException if threads of {@code compiler} already run with another goal, see {@link JitRuntime}
+     */
+    public SolutionThread(int compilationThreadBound, ExecutionEngine exec, CompilationEngine compiler, Runnable r,
+                          OptimizationGoal goal) {
+        this(compilationThreadBound, exec, compiler, r, JitRuntime.of(compiler, compilationThreadBound, goal));
+    }
+
+    /**
+     * The policy is runtime-wide: the first thread of {@code compiler} sets it, the others must pass the same instance.
+     *
+     * @throws IllegalStateException if threads of {@code compiler} already run with another policy
+     */
+    public SolutionThread(int compilationThreadBound, ExecutionEngine exec, CompilationEngine compiler, Runnable r,
+                          TieredPolicy policy) {
+        this(compilationThreadBound, exec, compiler, r, JitRuntime.of(compiler, compilationThreadBound, null, policy));
+    }
+
+    private SolutionThread(int compilationThreadBound, ExecutionEngine exec, CompilationEngine compiler, Runnable r,
+                           JitRuntime runtime) {
+        super(compilationThreadBound, exec, compiler, releasing(r));
+        this.runtime = runtime;
+        this.policy = runtime.policy;
+        this.sampler = new HotnessSampler(policy.samplingShift(), System.nanoTime() ^ id);
+        this.costModel = policy.costModel();
+        final TraceRecorder recorder = TraceRecorder.global();
+        this.trace = (recorder == null) ? null : recorder.log(id);
+        this.metrics = runtime.metrics.recorder(this);
+        this.deopt = runtime.deoptimizer.enabled() ? runtime.deoptimizer.participant(this) : null;
+    }
+
+    /**
+     * Wraps the task with {@link #bind()} and {@link #release()}, both run by the thread which actually runs the task.
+     */
+    private static Runnable releasing(Runnable r) {
+        return () -> {
+            final SolutionThread self = (SolutionThread) UserThread.current();
+            self.bind();
+            try {
+                r.run();
+            } finally {
+                self.release();
+            }
+        };
+    }
 
     @Override
     public ExecutionResult executeMethod(MethodID id) {
-        // TODO: implement me
-        return null;
+        assert UserThread.current() == this;
+        boolean timed = metrics.sampleDispatch();
+        long t1 = timed ? System.nanoTime() : 0;
+        if (trace != null) {
+            trace.record(id.id());
+        }
+        final Deoptimizer.Participant deopt = this.deopt;
+        if (deopt != null && deopt.behind()) {
+            deopt.catchUp(this::forget);
+        }
+        final MethodProfile p = profile(id);
+
+        int globalTier = TieredCode.L2;
+        boolean costed = false;
+        if (p.tier() < TieredCode.L2) {
+            refresh(p);
+            final int invocations = ++p.invocations;
+            if ((invocations & (PUBLISH_INTERVAL - 1)) == 0) {
+                p.publish();
+                decay(p);
+            }
+
+            final int tier = p.tier();
+            if (sampler.sample()) {
+                p.hotness += sampler.weight();
+                if (policy.shouldPromote(tier, p.hotness)
+                        && runtime.broker.worthCompiling(policy, p.state, tier + 1, p.hotness)) {
+                    runtime.broker.request(id, p.state, tier + 1);
+                }
+            }
+            final int deadline = (tier == TieredCode.INTERPRETED) ? L1_DEADLINE : L2_DEADLINE;
+            if (invocations >= deadline) {
+                if (!timed) {
+                    // blocking is the tail of dispatch latency, never leave it to sampling
+                    timed = true;
+                    t1 = System.nanoTime();
+                }
+                await(id, p, tier + 1);
+            }
+            globalTier = MethodState.readyTier(p.state.word());
+            // `await` may have brought L2, which is never measured
+            costed = costModel != null && (invocations & (CostModel.SAMPLE_INTERVAL - 1)) == 0
+                    && p.tier() < TieredCode.L2;
+        }
+
+        // all bookkeeping is done before execution: nested `executeMethod` calls may happen inside
+        final TieredCode code = p.code;
+        if (timed) {
+            metrics.recordDispatch(System.nanoTime() - t1);
+        }
+        metrics.recordExecution(p.tier(), globalTier);
+        final int depth = this.depth;
+        if (depth > 0) {
+            calledFrom(frames[depth - 1], p);
+        } else if (deopt != null) {
+            deopt.announce(); // top level: no stale code on the stack
+        }
+        push(depth, p);
+        try {
+            return invoke(id, p, code, costed);
+        } finally {
+            this.depth = depth;
+        }
+    }
+
+    private void push(int depth, MethodProfile p) {
+        MethodProfile[] frames = this.frames;
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+            this.frames = frames;
+        }
+        frames[depth] = p;
+        this.depth = depth + 1;
+    }
+
+    /**
+     * Records the call graph edge. A callee first seen from compiled code is compiled up to the tier of its caller.
+     */
+    private void calledFrom(MethodProfile caller, MethodProfile callee) {
+        if (caller.addCallee(callee) && caller.tier() > callee.tier()) {
+            compileAhead(caller, callee, caller.tier());
+        }
+    }
+
+    /**
+     * Requests compilation of a callee before it is hot itself: a hot caller makes it hot soon, and a deep call chain
+     * would otherwise warm up one level at a time. The caller's hotness stands in for the callee's one.
+     */
+    private void compileAhead(MethodProfile caller, MethodProfile callee, int tier) {
+        if (runtime.broker.worthCompiling(policy, callee.state, tier, caller.hotness)) {
+            runtime.broker.prefetch(callee.method, callee.state, tier);
+        }
     }
 
-    // TODO: add methods
-    // TODO: add inner classes
-    // TODO: add utility classes in the same package
-}
\ No newline at end of file
+    private ExecutionResult invoke(MethodID id, MethodProfile p, TieredCode code, boolean costed) {
+        if (!costed) {
+            return (code == null) ? exec.interpret(id) : exec.execute(code.code);
+        }
+        final long t2 = System.nanoTime();
+        final ExecutionResult result = (code == null) ? exec.interpret(id) : exec.execute(code.code);
+        p.state.recordExecutionCost((code == null) ? TieredCode.INTERPRETED : code.tier, System.nanoTime() - t2);
+        return result;
+    }
+
+    private MethodProfile profile(MethodID id) {
+        final long key = id.id();
+        final int index = profileIndex.get(key, -1);
+        if (index >= 0) {
+            return stripe.get(index);
+        }
+        final MethodProfile p = new MethodProfile(id, runtime.states.of(key), System.nanoTime());
+        profileIndex.put(key, stripe.add(p));
+        return p;
+    }
+
+    /**
+     * Runs on the owner before its task: joins the runtime-wide registries, which takes their locks, so this stays off
+     * the `executeMethod` path. A thread which is constructed but never started is never registered, so it cannot keep
+     * them (and the aggregator thread) alive.
+     */
+    private void bind() {
+        metrics.bind();
+        runtime.hotness.register(stripe);
+        if (deopt != null) {
+            deopt.bind();
+        }
+    }
+
+    /**
+     * Runs on the owner once its task is over, including a failed one. Pools and test environments keep finished
+     * threads, so private tables are dropped right away rather than with the thread object. Profiles follow as soon as
+     * {@link HotnessAggregator} has folded their counters.
+     */
+    private void release() {
+        profileIndex = null;
+        frames = null;
+        if (deopt != null) {
+            deopt.leave();
+        }
+    }
+
+    /**
+     * @return number of methods this thread keeps profiles of, {@code 0} once it has terminated and been aggregated
+     */
+    int profiles() {
+        return stripe.size();
+    }
+
+    /**
+     * Decay is applied lazily, once per {@link #PUBLISH_INTERVAL} invocations, to keep the clock off the common path.
+     */
+    private void decay(MethodProfile p) {
+        if (policy.halfLifeNanos() == TieredPolicy.NO_DECAY) {
+            return;
+        }
+        final long now = System.nanoTime();
+        p.hotness = policy.decay(p.hotness, now - p.decayedAtNanos);
+        p.decayedAtNanos = now;
+    }
+
+    /**
+     * Drops everything this thread knows about an invalidated method: it is interpreted and warms up again.
+     */
+    private void forget(long methodId) {
+        final int index = profileIndex.get(methodId, -1);
+        if (index < 0) {
+            return;
+        }
+        final MethodProfile p = stripe.get(index);
+        if (p.code != null) {
+            JitEvents.tierReached(this.id, methodId, p.tier(), TieredCode.INTERPRETED, p.invocations);
+            p.code = null;
+        }
+        p.seenSnapshot = -1;
+        p.invocations = 0;
+        p.hotness = 0;
+        p.publish();
+    }
+
+    /**
+     * Picks up code compiled by other threads. Wait-free, costs a single volatile read if nothing changed.
+     */
+    private void refresh(MethodProfile p) {
+        final CodeSnapshot snapshot = runtime.cache.snapshot();
+        if (snapshot.version == p.seenSnapshot) {
+            return;
+        }
+        p.seenSnapshot = snapshot.version;
+        final TieredCode published = snapshot.lookup(p.state.id);
+        if (published != null && published.tier > p.tier()) {
+            JitEvents.tierReached(this.id, p.state.id, p.tier(), published.tier, p.invocations);
+            p.code = published;
+            for (int i = 0; i < p.calleeCount(); i++) {
+                final MethodProfile callee = p.callee(i);
+                if (callee.tier() < published.tier) {
+                    compileAhead(p, callee, published.tier);
+                }
+            }
+        }
+    }
+
+    private void await(MethodID id, MethodProfile p, int tier) {
+        boolean boosted = false;
+        while (p.tier() < tier) {
+            final long seen = p.state.word();
+            if (MethodState.readyTier(seen) >= tier) {
+                refresh(p);
+                continue;
+            }
+            if (MethodState.failed(seen)) {
+                return; // the engine cannot compile it, waiting any longer would never end
+            }
+            runtime.broker.request(id, p.state, tier);
+            if (!boosted) {
+                p.state.addHeat(BLOCKED_HEAT);
+                boosted = true;
+            }
+            try {
+                p.state.awaitChange(seen, AWAIT_SLICE_MILLIS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
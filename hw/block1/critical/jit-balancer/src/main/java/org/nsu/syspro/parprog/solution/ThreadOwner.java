@@ -0,0 +1,39 @@
+package org.nsu.syspro.parprog.solution;
+
+/**
+ * Owner of per-thread state kept in a shared registry: a {@link org.nsu.syspro.parprog.UserThread} started as usual or
+ * the thread which actually runs it, see {@link VirtualUserThreads}. Registries drop the state once the owner has
+ * terminated.
+ * <br>
+ * State of a thread which is never started must never reach a registry: its owner would stay
+ * {@link Thread.State#NEW} forever. So registration happens on {@link #bind()}, by the running thread.
+ */
+final class ThreadOwner {
+    private final Thread user;
+    private volatile Thread runner;
+
+    ThreadOwner(Thread user) {
+        this.user = user;
+    }
+
+    /**
+     * Declares the current thread as the one which owns the state.
+     *
+     * @return {@code true} on the first call only
+     */
+    boolean bind() {
+        if (runner != null) {
+            return false;
+        }
+        runner = Thread.currentThread();
+        return true;
+    }
+
+    /**
+     * Safe from any thread. Once {@code true}, state written by the owner is final.
+     */
+    boolean terminated() {
+        final Thread owner = runner;
+        return ((owner == null) ? user : owner).getState() == Thread.State.TERMINATED;
+    }
+}
@@ -0,0 +1,50 @@
+package org.nsu.syspro.parprog.solution;
+
+/**
+ * {@link TieredPolicy} with constant per-tier thresholds.
+ */
+public final class ThresholdPolicy implements TieredPolicy {
+    private final long l1Threshold;
+    private final long l2Threshold;
+    private final long halfLifeNanos;
+    private final int samplingShift;
+
+    public ThresholdPolicy(long l1Threshold, long l2Threshold, long halfLifeNanos, int samplingShift) {
+        if (l1Threshold < 0 || l2Threshold < 0 || halfLifeNanos <= 0 || samplingShift < 0 || samplingShift > 30) {
+            throw new IllegalArgumentException("Bad thresholds: l1 = " + l1Threshold + ", l2 = " + l2Threshold
+                    + ", halfLife = " + halfLifeNanos + ", samplingShift = " + samplingShift);
+        }
+        this.l1Threshold = l1Threshold;
+        this.l2Threshold = l2Threshold;
+        this.halfLifeNanos = halfLifeNanos;
+        this.samplingShift = samplingShift;
+    }
+
+    @Override
+    public long threshold(int tier) {
+        switch (tier) {
+            case TieredCode.L1:
+                return l1Threshold;
+            case TieredCode.L2:
+                return l2Threshold;
+            default:
+                throw new IllegalArgumentException("No threshold for tier " + tier);
+        }
+    }
+
+    @Override
+    public long halfLifeNanos() {
+        return halfLifeNanos;
+    }
+
+    @Override
+    public int samplingShift() {
+        return samplingShift;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ThresholdPolicy(l1=%d, l2=%d, halfLife=%dns, samplingShift=%d)",
+                l1Threshold, l2Threshold, halfLifeNanos, samplingShift);
+    }
+}
@@ -0,0 +1,38 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.nsu.syspro.parprog.external.CompiledMethod;
+
+/**
+ * Immutable pair of {@link CompiledMethod} and JIT level which produced it. {@link CompiledMethod} itself does not
+ * expose its level, but caches must know it to keep `Per-thread-monotonicity`.
+ */
+public final class TieredCode {
+    public static final int INTERPRETED = 0;
+    public static final int L1 = 1;
+    public static final int L2 = 2;
+
+    /**
+     * Tombstone for tables which never remove keys, see {@link CodeCache}.
+     */
+    static final TieredCode EVICTED = new TieredCode();
+
+    public final CompiledMethod code;
+    public final int tier;
+
+    private TieredCode() {
+        this.code = null;
+        this.tier = INTERPRETED;
+    }
+
+    public TieredCode(CompiledMethod code, int tier) {
+        assert code != null;
+        assert tier == L1 || tier == L2;
+        this.code = code;
+        this.tier = tier;
+    }
+
+    @Override
+    public String toString() {
+        return (this == EVICTED) ? "TieredCode(evicted)" : String.format("TieredCode(%d, L%d)", code.id().id(), tier);
+    }
+}
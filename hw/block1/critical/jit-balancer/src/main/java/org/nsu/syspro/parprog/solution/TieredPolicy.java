@@ -0,0 +1,120 @@
+package org.nsu.syspro.parprog.solution;
+
+/**
+ * Decides when a method should be promoted to the next JIT level.
+ * <br>
+ * Policy sees a per-thread <i>hotness</i> counter: number of invocations, optionally decayed with
+ * {@link #halfLifeNanos()} so that methods which were hot long ago do not look hot forever. With
+ * {@link #samplingShift()} {@code > 0} hotness is counted probabilistically (see {@link HotnessSampler}), so cheap methods
+ * do not pay for the policy on every invocation. Policy never sees
+ * correctness deadlines: {@link SolutionThread} keeps `Eventual-per-thread-progress-*` on its own, whatever the policy says.
+ * <br>
+ * Presets follow the efficiency goals from the readme:
+ * <ul>
+ *     <li> {@link #latencyFirst()}: compile early, spend as little time as possible in interpreter
+ *     <li> {@link #throughputFirst()}: get hot methods to L2 quickly
+ *     <li> {@link #cpuFrugal()}: compile only methods which stay hot, high thresholds, fast decay and sampled counting
+ *     <li> {@link #cpuCycles()}: minimize used CPU cycles, low thresholds only nominate methods, they are compiled
+ *     only if measured execution time says it pays off
+ * </ul>
+ * Preset for {@link SolutionThread} comes with its {@link OptimizationGoal} or is selected explicitly by
+ * {@code -Djit.policy=latency-first|throughput-first|cpu-frugal|cpu-cycles|balanced}.
+ */
+public interface TieredPolicy {
+    long NO_DECAY = Long.MAX_VALUE;
+
+    /**
+     * @return minimal hotness of a method running at {@code tier - 1} to request compilation by {@code tier}
+     */
+    long threshold(int tier);
+
+    /**
+     * @return half-life of hotness counters in nanoseconds or {@link #NO_DECAY}
+     */
+    long halfLifeNanos();
+
+    /**
+     * @return {@code log2} of the sampling period of hotness counting, {@code 0} means exact counting
+     */
+    default int samplingShift() {
+        return 0;
+    }
+
+    /**
+     * Per-tier promotion rule.
+     *
+     * @return {@code true} if a method currently executed at {@code currentTier} should be compiled by the next level
+     */
+    default boolean shouldPromote(int currentTier, long hotness) {
+        return currentTier < TieredCode.L2 && hotness >= threshold(currentTier + 1);
+    }
+
+    /**
+     * @return cost model which must approve every promotion on top of {@link #shouldPromote}, {@code null} if counting
+     * alone decides
+     */
+    default CostModel costModel() {
+        return null;
+    }
+
+    /**
+     * @return {@code hotness} after {@code elapsedNanos} of exponential decay
+     */
+    default long decay(long hotness, long elapsedNanos) {
+        final long halfLife = halfLifeNanos();
+        if (halfLife == NO_DECAY || elapsedNanos <= 0) {
+            return hotness;
+        }
+        return (long) (hotness * Math.pow(0.5, (double) elapsedNanos / halfLife));
+    }
+
+    static TieredPolicy of(long l1Threshold, long l2Threshold, long halfLifeNanos) {
+        return new ThresholdPolicy(l1Threshold, l2Threshold, halfLifeNanos, 0);
+    }
+
+    static TieredPolicy sampled(long l1Threshold, long l2Threshold, long halfLifeNanos, int samplingShift) {
+        return new ThresholdPolicy(l1Threshold, l2Threshold, halfLifeNanos, samplingShift);
+    }
+
+    static TieredPolicy costAware(TieredPolicy counting, CostModel model) {
+        return new CostAwarePolicy(counting, model);
+    }
+
+    static TieredPolicy balanced() {
+        return of(1_000, 10_000, NO_DECAY);
+    }
+
+    static TieredPolicy latencyFirst() {
+        return of(200, 5_000, NO_DECAY);
+    }
+
+    static TieredPolicy throughputFirst() {
+        return of(1_000, 3_000, NO_DECAY);
+    }
+
+    static TieredPolicy cpuFrugal() {
+        return sampled(5_000, 50_000, 1_000_000_000L, 4);
+    }
+
+    static TieredPolicy cpuCycles() {
+        // counting only nominates: a hot method should not pay for a thousand interpretations before the model decides
+        return costAware(of(300, 3_000, NO_DECAY), CostModel.defaultModel());
+    }
+
+    static TieredPolicy named(String name) {
+        switch (name) {
+            case "balanced":
+                return balanced();
+            case "latency-first":
+                return latencyFirst();
+            case "throughput-first":
+                return throughputFirst();
+            case "cpu-frugal":
+                return cpuFrugal();
+            case "cpu-cycles":
+                return cpuCycles();
+            default:
+                throw new IllegalArgumentException("Unknown jit.policy: " + name);
+        }
+    }
+}
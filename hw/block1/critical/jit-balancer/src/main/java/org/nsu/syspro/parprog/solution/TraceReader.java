@@ -0,0 +1,159 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a trace written by {@link TraceRecorder}.
+ * <br>
+ * The file is memory-mapped read-only. Opening scans chunk headers only and builds a per-thread index, entries are
+ * decoded lazily by {@link Cursor}s straight from the mapping: sequential reads without copying, so replay is never
+ * bottlenecked by the reader. Every {@link Cursor} has its own view of the mapping, cursors of different threads could
+ * be used concurrently.
+ * <br>
+ * Weak point: a single mapping is limited to 2 GiB, so larger traces are rejected.
+ */
+public final class TraceReader {
+    private static final int FILE_HEADER_BYTES = 8 + 4;
+
+    private final MappedByteBuffer mapping;
+    private final Map<Long, List<Chunk>> threads = new LinkedHashMap<>();
+    private long totalEntries;
+
+    private static final class Chunk {
+        final long baseNanos;
+        final int count;
+        final int offset;
+
+        Chunk(long baseNanos, int count, int offset) {
+            this.baseNanos = baseNanos;
+            this.count = count;
+            this.offset = offset;
+        }
+    }
+
+    public TraceReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Trace is too large to be mapped at once: " + size + " bytes");
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        mapping.order(ByteOrder.BIG_ENDIAN);
+        if (mapping.limit() < FILE_HEADER_BYTES || mapping.getLong(0) != TraceRecorder.MAGIC) {
+            throw new IOException("Not a trace file: " + path);
+        }
+        if (mapping.getInt(8) != TraceRecorder.VERSION) {
+            throw new IOException("Unsupported trace version " + mapping.getInt(8) + ": " + path);
+        }
+        for (int pos = FILE_HEADER_BYTES; pos < mapping.limit(); ) {
+            if (pos + TraceRecorder.CHUNK_HEADER_BYTES > mapping.limit()) {
+                throw new IOException("Truncated chunk header at " + pos + ": " + path);
+            }
+            final long threadId = mapping.getLong(pos);
+            final long baseNanos = mapping.getLong(pos + 8);
+            final int count = mapping.getInt(pos + 16);
+            final int length = mapping.getInt(pos + 20);
+            final int payload = pos + TraceRecorder.CHUNK_HEADER_BYTES;
+            if (count < 0 || length < 0 || payload + length > mapping.limit()) {
+                throw new IOException("Truncated chunk at " + pos + ": " + path);
+            }
+            threads.computeIfAbsent(threadId, id -> new ArrayList<>()).add(new Chunk(baseNanos, count, payload));
+            totalEntries += count;
+            pos = payload + length;
+        }
+    }
+
+    /**
+     * @return ids of recorded threads in order of their first flushed chunk
+     */
+    public List<Long> threads() {
+        return Collections.unmodifiableList(new ArrayList<>(threads.keySet()));
+    }
+
+    public long totalEntries() {
+        return totalEntries;
+    }
+
+    /**
+     * @return cursor over calls of thread {@code threadId} in the order they were made
+     */
+    public Cursor cursor(long threadId) {
+        final List<Chunk> chunks = threads.get(threadId);
+        if (chunks == null) {
+            throw new IllegalArgumentException("No such thread in trace: " + threadId);
+        }
+        return new Cursor(mapping.duplicate(), chunks);
+    }
+
+    /**
+     * Single-threaded iterator over calls of one thread, decodes entries in place.
+     */
+    public static final class Cursor {
+        private final ByteBuffer view;
+        private final List<Chunk> chunks;
+        private int chunk = -1;
+        private int left;
+        private long nanos;
+        private long methodId;
+
+        private Cursor(ByteBuffer view, List<Chunk> chunks) {
+            this.view = view;
+            this.chunks = chunks;
+        }
+
+        /**
+         * @return {@code false} if there are no more calls
+         */
+        public boolean next() {
+            while (left == 0) {
+                if (++chunk == chunks.size()) {
+                    chunk--;
+                    return false;
+                }
+                final Chunk c = chunks.get(chunk);
+                view.position(c.offset);
+                left = c.count;
+                nanos = c.baseNanos;
+            }
+            nanos += readVarLong();
+            final long zigzag = readVarLong();
+            methodId = (zigzag >>> 1) ^ -(zigzag & 1);
+            left--;
+            return true;
+        }
+
+        /**
+         * @return time of the current call in nanoseconds since recording started
+         */
+        public long nanos() {
+            return nanos;
+        }
+
+        public long methodId() {
+            return methodId;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = view.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
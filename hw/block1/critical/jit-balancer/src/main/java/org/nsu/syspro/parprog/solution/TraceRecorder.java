@@ -0,0 +1,226 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Records the sequence of {@code executeMethod} calls of every thread with timestamps into a compact binary file,
+ * which could be replayed later (see {@link TraceReader}).
+ * <br>
+ * File layout (big-endian): {@link #MAGIC}, {@link #VERSION}, then chunks. Chunk header is
+ * {@code threadId:long, baseNanos:long, count:int, length:int}, followed by {@code length} bytes of {@code count}
+ * entries. Entry is {@code varint(nanos - previousNanos), varint(zigzag(methodId))}, previous nanos of the first entry
+ * is {@code baseNanos}. Timestamps are nanoseconds since the recorder was opened.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> Every thread appends to its own {@link ThreadLog} without synchronization: one {@link System#nanoTime()}
+ *     and a few byte stores per call.
+ *     <li> A full log is written as one chunk under the recorder lock. Chunks of different threads interleave in the file.
+ *     <li> The owner publishes its write position with release semantics, so {@link #close()} could flush logs of threads
+ *     which are still running without stopping them.
+ * </ul>
+ * Weak point: flushing a full log blocks the owner on file I/O, so tracing is for diagnostics, not for production latency.
+ * Records made after {@link #close()} are dropped.
+ */
+public final class TraceRecorder implements AutoCloseable {
+    public static final long MAGIC = 0x4A49_5454_5241_4345L; // "JITTRACE"
+    public static final int VERSION = 1;
+    static final int CHUNK_HEADER_BYTES = 8 + 8 + 4 + 4;
+
+    private static final int LOG_BYTES = 64 << 10;
+    private static final int MAX_ENTRY_BYTES = 10 + 10;
+
+    private static final Object globalLock = new Object();
+    private static boolean globalOpened; // guarded by globalLock
+    private static TraceRecorder global; // guarded by globalLock
+
+    private final FileChannel channel;
+    private final long startNanos = System.nanoTime();
+    private final ArrayList<ThreadLog> logs = new ArrayList<>(); // guarded by this
+    private boolean closed; // guarded by this
+
+    private TraceRecorder(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static TraceRecorder open(Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        final ByteBuffer header = ByteBuffer.allocate(8 + 4).order(ByteOrder.BIG_ENDIAN);
+        header.putLong(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        return new TraceRecorder(channel);
+    }
+
+    /**
+     * Recorder of the whole process configured by {@code -Djit.trace=<file>}. Opened on first use, closed at shutdown.
+     *
+     * @return {@code null} if tracing is not enabled
+     */
+    public static TraceRecorder global() {
+        synchronized (globalLock) {
+            if (!globalOpened) {
+                globalOpened = true;
+                final String file = System.getProperty("jit.trace");
+                if (file != null) {
+                    try {
+                        final TraceRecorder recorder = open(Paths.get(file));
+                        Runtime.getRuntime().addShutdownHook(new Thread(recorder::close, "jit-trace-flush"));
+                        global = recorder;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            return global;
+        }
+    }
+
+    /**
+     * @param threadId identity of the recorded thread in the trace, e.g. {@link org.nsu.syspro.parprog.UserThread#id}
+     * @return log which must be used by a single thread only
+     */
+    public synchronized ThreadLog log(long threadId) {
+        final ThreadLog log = new ThreadLog(this, threadId);
+        logs.add(log);
+        return log;
+    }
+
+    /**
+     * Flushes everything published by all threads so far. Later records are dropped.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            for (ThreadLog log : logs) {
+                log.flush(log.published());
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            closed = true;
+        }
+    }
+
+    public static final class ThreadLog {
+        private static final VarHandle POSITION;
+
+        static {
+            try {
+                POSITION = MethodHandles.lookup().findVarHandle(ThreadLog.class, "position", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final TraceRecorder recorder;
+        private final long threadId;
+        private final byte[] bytes = new byte[LOG_BYTES];
+
+        // owner only
+        @SuppressWarnings("unused") // accessed via POSITION
+        private int position;
+        private int count;
+        private long baseNanos;
+        private long lastNanos;
+
+        private ThreadLog(TraceRecorder recorder, long threadId) {
+            this.recorder = recorder;
+            this.threadId = threadId;
+        }
+
+        /**
+         * Appends one call of method {@code methodId} made right now.
+         */
+        public void record(long methodId) {
+            final long now = System.nanoTime() - recorder.startNanos;
+            int pos = position;
+            if (pos > LOG_BYTES - MAX_ENTRY_BYTES) {
+                synchronized (recorder) {
+                    flush(pos);
+                    // reset under the lock: `close` never sees a stale position while the bytes are being reused
+                    POSITION.setRelease(this, 0);
+                }
+                pos = 0;
+                count = 0;
+            }
+            if (count == 0) {
+                baseNanos = now;
+                lastNanos = now;
+            }
+            pos = putVarLong(bytes, pos, now - lastNanos);
+            pos = putVarLong(bytes, pos, (methodId << 1) ^ (methodId >> 63));
+            lastNanos = now;
+            count++;
+            POSITION.setRelease(this, pos);
+        }
+
+        private int published() {
+            return (int) POSITION.getAcquire(this);
+        }
+
+        /**
+         * Writes {@code [0, position)} as a chunk. Caller holds the recorder lock.
+         */
+        private void flush(int position) {
+            assert Thread.holdsLock(recorder);
+            if (recorder.closed || position == 0) {
+                return;
+            }
+            // `position` was read with acquire semantics: entries before it and `baseNanos` are visible
+            final ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+            header.putLong(threadId).putLong(baseNanos).putInt(countEntries(position)).putInt(position).flip();
+            final ByteBuffer payload = ByteBuffer.wrap(bytes, 0, position);
+            try {
+                while (header.hasRemaining()) {
+                    recorder.channel.write(header);
+                }
+                while (payload.hasRemaining()) {
+                    recorder.channel.write(payload);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private int countEntries(int position) {
+            int entries = 0;
+            for (int pos = 0; pos < position; entries++) {
+                pos = skipVarLong(bytes, skipVarLong(bytes, pos));
+            }
+            return entries;
+        }
+    }
+
+    static int putVarLong(byte[] bytes, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    static int skipVarLong(byte[] bytes, int pos) {
+        while (bytes[pos++] < 0) {
+            // continuation bit is set
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,63 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.nsu.syspro.parprog.UserThread;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Execution mode where the work of a {@link UserThread} runs on a virtual thread instead of the platform thread it extends.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> {@link UserThread#run()} is called directly on a fresh virtual thread, so {@link UserThread#current()} is set
+ *     there and every {@code executeMethod} of one {@link UserThread} still happens in exactly one thread
+ *     (`Same-thread-correctness`). The {@link UserThread} object itself is never started and only carries per-thread state.
+ *     <li> Nothing that a user thread may block on pins a carrier: compile requests are lock-free and waiting for code
+ *     parks on a {@link java.util.concurrent.locks.ReentrantLock} ({@link MethodState#awaitChange(long, long)}).
+ *     <li> Virtual threads appeared in Java 21 while this project targets Java 11, so they are looked up reflectively.
+ *     On older runtimes {@link #start(UserThread)} falls back to {@link Thread#start()}.
+ * </ul>
+ */
+public final class VirtualUserThreads {
+    private static final MethodHandle START_VIRTUAL = lookupStartVirtual();
+
+    private VirtualUserThreads() {
+    }
+
+    private static MethodHandle lookupStartVirtual() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Thread.class, "startVirtualThread",
+                    MethodType.methodType(Thread.class, Runnable.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return {@code true} if the runtime has virtual threads
+     */
+    public static boolean supported() {
+        return START_VIRTUAL != null;
+    }
+
+    /**
+     * Runs {@code user} on a new virtual thread if {@link #supported()}, otherwise starts it as a platform thread.
+     *
+     * @return thread which executes {@code user}, join it to wait for completion
+     */
+    public static Thread start(UserThread user) {
+        if (START_VIRTUAL == null) {
+            user.start();
+            return user;
+        }
+        try {
+            return (Thread) START_VIRTUAL.invokeExact((Runnable) user::run);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.nsu.syspro.parprog.external.MethodID;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hot methods and the tier each of them reached, persisted between runs to skip warm-up.
+ * <br>
+ * Design:
+ * <ul>
+ *     <li> With {@code -Djit.profile=<file>} every {@link JitRuntime} {@link #schedule}s the profile on its compiler
+ *     pool as soon as it is created, i.e. when the first {@link SolutionThread} is constructed and before any of them
+ *     interprets. At shutdown the profile of all live runtimes is written back to the same file.
+ *     <li> Scheduling goes through {@link CompilerBroker#prefetch}, i.e. the usual {@link MethodState} transitions:
+ *     `CPU-bound-compilation` and `Thread-bound-compilation` hold exactly as for compilations requested by user threads.
+ *     Prefetched requests are cold, so requests of really hot methods still overtake them in {@link CompileQueue}.
+ *     <li> Text format, one method per line: {@code <method id> <tier> <global hotness>}, hottest first, so the most
+ *     valuable entries survive if the compile queue is full.
+ *     <li> The profile is an optimization only: a corrupt or unreadable file is reported as a
+ *     {@link JitEvents.WarmProfileFailed} event, never printed, and the run starts cold. The file is rewritten with the
+ *     loaded profile merged with the captured one, so methods this run never reached keep their entries, and it is not
+ *     touched at all if there is nothing to write. A failed write is reported the same way.
+ * </ul>
+ * Weak point: the engine receives a {@link MethodID} which only carries {@link MethodID#id()}, because the original
+ * object is not known until a user thread calls the method. Engines must not rely on anything else.
+ */
+public final class WarmProfile {
+    public static final String PROPERTY = "jit.profile";
+
+    private static final String HEADER = "# jit-balancer warm profile v1: <method id> <tier> <global hotness>";
+    private static final WarmProfile EMPTY = new WarmProfile(new long[0], new int[0], new long[0]);
+
+    private static final Object globalLock = new Object();
+    private static boolean globalLoaded; // guarded by globalLock
+    private static WarmProfile global; // guarded by globalLock
+    private static final List<WeakReference<JitRuntime>> runtimes = new ArrayList<>(); // guarded by globalLock
+
+    private final long[] ids;
+    private final int[] tiers;
+    private final long[] hotness;
+
+    private WarmProfile(long[] ids, int[] tiers, long[] hotness) {
+        this.ids = ids;
+        this.tiers = tiers;
+        this.hotness = hotness;
+    }
+
+    private static final class Entry {
+        final long id;
+        int tier;
+        long hotness;
+
+        Entry(long id, int tier, long hotness) {
+            this.id = id;
+            this.tier = tier;
+            this.hotness = hotness;
+        }
+    }
+
+    private static WarmProfile of(Map<Long, Entry> entries) {
+        final Entry[] sorted = entries.values().toArray(new Entry[0]);
+        Arrays.sort(sorted, Comparator.<Entry>comparingInt(e -> -e.tier).thenComparingLong(e -> -e.hotness));
+        final long[] ids = new long[sorted.length];
+        final int[] tiers = new int[sorted.length];
+        final long[] hotness = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            ids[i] = sorted[i].id;
+            tiers[i] = sorted[i].tier;
+            hotness[i] = sorted[i].hotness;
+        }
+        return new WarmProfile(ids, tiers, hotness);
+    }
+
+    /**
+     * Highest tier every method ever reached in any of {@code states}; interpreted-only methods are skipped.
+     */
+    public static WarmProfile capture(List<CompilationStates> states) {
+        final Map<Long, Entry> entries = new HashMap<>();
+        for (CompilationStates s : states) {
+            s.forEach((id, state) -> {
+                final long word = state.word();
+                // evicted L1 code was compiled once, the method is as hot as any L1 one
+                final int tier = Math.max(MethodState.readyTier(word),
+                        MethodState.l1Evicted(word) ? TieredCode.L1 : TieredCode.INTERPRETED);
+                if (tier == TieredCode.INTERPRETED) {
+                    return;
+                }
+                final Entry e = entries.computeIfAbsent(id, key -> new Entry(key, tier, 0));
+                e.tier = Math.max(e.tier, tier);
+                e.hotness += state.globalHotness();
+            });
+        }
+        return of(entries);
+    }
+
+    /**
+     * @return profile with every method of both profiles at the higher of its tiers
+     */
+    WarmProfile merge(WarmProfile other) {
+        final Map<Long, Entry> entries = new HashMap<>();
+        for (WarmProfile p : List.of(this, other)) {
+            for (int i = 0; i < p.ids.length; i++) {
+                final int tier = p.tiers[i];
+                final long hotness = p.hotness[i];
+                final Entry e = entries.computeIfAbsent(p.ids[i], key -> new Entry(key, tier, hotness));
+                e.tier = Math.max(e.tier, tier);
+                e.hotness = Math.max(e.hotness, hotness);
+            }
+        }
+        return of(entries);
+    }
+
+    public static WarmProfile read(Path path) throws IOException {
+        final Map<Long, Entry> entries = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] fields = line.split("\\s+");
+                try {
+                    if (fields.length != 3) {
+                        throw new NumberFormatException("expected 3 fields, found " + fields.length);
+                    }
+                    final long id = Long.parseLong(fields[0]);
+                    final int tier = Integer.parseInt(fields[1]);
+                    if (tier != TieredCode.L1 && tier != TieredCode.L2) {
+                        throw new NumberFormatException("bad tier " + tier);
+                    }
+                    entries.put(id, new Entry(id, tier, Long.parseLong(fields[2])));
+                } catch (NumberFormatException e) {
+                    throw new IOException(path + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return of(entries);
+    }
+
+    public void write(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (int i = 0; i < ids.length; i++) {
+                writer.write(ids[i] + " " + tiers[i] + " " + hotness[i]);
+                writer.newLine();
+            }
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Non-blocking: queues compilation of every method up to its tier.
+     *
+     * @return number of compilations queued right now, L2 compilations are queued later on top of L1
+     */
+    public int schedule(CompilerBroker broker, CompilationStates states) {
+        int queued = 0;
+        for (int i = 0; i < ids.length; i++) {
+            final long id = ids[i];
+            final MethodID method = () -> id;
+            if (broker.prefetch(method, states.of(id), tiers[i])) {
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Applies the profile configured by {@code -Djit.profile=<file>} (if any) to a fresh runtime. The file is read
+     * once per process, a missing file means the first run.
+     */
+    static void install(JitRuntime runtime) {
+        final String file = System.getProperty(PROPERTY);
+        if (file == null) {
+            return;
+        }
+        final WarmProfile profile;
+        synchronized (globalLock) {
+            if (!globalLoaded) {
+                globalLoaded = true;
+                global = load(Paths.get(file));
+                final WarmProfile loaded = global;
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(Paths.get(file), loaded),
+                        "jit-profile-dump"));
+            }
+            runtimes.removeIf(ref -> ref.get() == null);
+            runtimes.add(new WeakReference<>(runtime));
+            profile = global;
+        }
+        profile.schedule(runtime.broker, runtime.states);
+    }
+
+    /**
+     * @return profile stored at {@code path}, empty if there is none or it cannot be read
+     */
+    static WarmProfile load(Path path) {
+        try {
+            return read(path);
+        } catch (NoSuchFileException e) {
+            return EMPTY;
+        } catch (IOException e) {
+            JitEvents.warmProfileFailed(path, false, e);
+            return EMPTY;
+        }
+    }
+
+    private static void dump(Path path, WarmProfile loaded) {
+        final List<CompilationStates> states = new ArrayList<>();
+        synchronized (globalLock) {
+            for (WeakReference<JitRuntime> ref : runtimes) {
+                final JitRuntime runtime = ref.get();
+                if (runtime != null) {
+                    states.add(runtime.states);
+                }
+            }
+        }
+        save(path, loaded, capture(states));
+    }
+
+    /**
+     * Writes {@code loaded} merged with {@code captured} unless both are empty.
+     */
+    static void save(Path path, WarmProfile loaded, WarmProfile captured) {
+        final WarmProfile merged = loaded.merge(captured);
+        if (merged.size() == 0) {
+            return;
+        }
+        try {
+            merged.write(path);
+        } catch (IOException e) {
+            JitEvents.warmProfileFailed(path, true, e);
+        }
+    }
+}
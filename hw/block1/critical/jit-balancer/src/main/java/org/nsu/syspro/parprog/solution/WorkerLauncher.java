@@ -0,0 +1,50 @@
+package org.nsu.syspro.parprog.solution;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Starts compiler threads on behalf of {@link CompilerBroker#submit}, so a user thread never creates a thread: creation
+ * is a native call of unbounded latency, while a launch request is a queue append and an unpark.
+ * <br>
+ * One daemon thread per process, started when the first {@link CompilerBroker} is constructed, i.e. with the first
+ * {@link JitRuntime} and never inside `executeMethod`. It only parks while there is nothing to start.
+ */
+final class WorkerLauncher {
+    private static final ConcurrentLinkedQueue<CompilerBroker> requests = new ConcurrentLinkedQueue<>();
+    private static final Thread thread = start();
+
+    private WorkerLauncher() {
+    }
+
+    private static Thread start() {
+        final Thread t = new Thread(WorkerLauncher::loop, "jit-compiler-launcher");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    /**
+     * Makes sure the launcher runs, cheap after the first call.
+     */
+    static void init() {
+        assert thread.isAlive();
+    }
+
+    /**
+     * Non-blocking: {@code broker} gets its missing workers soon.
+     */
+    static void launch(CompilerBroker broker) {
+        requests.offer(broker);
+        LockSupport.unpark(thread);
+    }
+
+    private static void loop() {
+        while (true) {
+            for (CompilerBroker broker = requests.poll(); broker != null; broker = requests.poll()) {
+                broker.launchWorkers();
+            }
+            LockSupport.park(WorkerLauncher.class);
+        }
+    }
+}
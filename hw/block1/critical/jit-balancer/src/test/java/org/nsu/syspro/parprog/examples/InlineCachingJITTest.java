@@ -0,0 +1,81 @@
+package org.nsu.syspro.parprog.examples;
+
+import org.junit.jupiter.api.Test;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InlineCachingJITTest {
+    private static final ExecutionResult INTERPRETED = new ExecutionResult() {
+    };
+    private static final ExecutionResult EXECUTED = new ExecutionResult() {
+    };
+
+    private static final ExecutionEngine EXEC = TestEngines.exec(INTERPRETED, EXECUTED);
+
+    private static final class CountingCompiler implements CompilationEngine {
+        final AtomicInteger compilations = new AtomicInteger();
+
+        @Override
+        public CompiledMethod compile_l1(MethodID method) {
+            return compile_l2(method);
+        }
+
+        @Override
+        public CompiledMethod compile_l2(MethodID method) {
+            compilations.incrementAndGet();
+            return () -> method;
+        }
+    }
+
+    private static MethodID method(long id) {
+        return () -> id;
+    }
+
+    @Test
+    void working_set_within_capacity_is_compiled_once() {
+        final var compiler = new CountingCompiler();
+        final var jit = new InlineCachingJIT(2, EXEC, compiler, () -> {}, 1, 4);
+        final MethodID[] methods = {method(1), method(2), method(3), method(4)};
+        for (int i = 0; i < 10_000; i++) {
+            assertSame(EXECUTED, jit.executeMethod(methods[i % methods.length]));
+        }
+        assertEquals(4, compiler.compilations.get());
+        assertEquals(4, jit.compilations());
+    }
+
+    @Test
+    void pseudo_lru_keeps_recently_used_entries() {
+        final var compiler = new CountingCompiler();
+        final var jit = new InlineCachingJIT(2, EXEC, compiler, () -> {}, 1, 4);
+        for (long id = 1; id <= 4; id++) {
+            jit.executeMethod(method(id));
+        }
+        // 1 and 2 are used again, a newcomer must replace 3 or 4
+        jit.executeMethod(method(1));
+        jit.executeMethod(method(2));
+        final MethodID newcomer = method(5);
+        ExecutionResult result;
+        do {
+            result = jit.executeMethod(newcomer);
+        } while (result == INTERPRETED);
+        assertEquals(5, compiler.compilations.get());
+
+        assertSame(EXECUTED, jit.executeMethod(method(1)));
+        assertSame(EXECUTED, jit.executeMethod(method(2)));
+        assertEquals(5, compiler.compilations.get());
+    }
+
+    @Test
+    void rejects_bad_geometry() {
+        assertThrows(IllegalArgumentException.class, () -> new InlineCachingJIT(2, EXEC, new CountingCompiler(), () -> {}, 3, 4));
+        assertThrows(IllegalArgumentException.class, () -> new InlineCachingJIT(2, EXEC, new CountingCompiler(), () -> {}, 2, 32));
+    }
+}
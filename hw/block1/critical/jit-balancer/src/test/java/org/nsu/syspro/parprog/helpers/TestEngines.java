@@ -0,0 +1,53 @@
+package org.nsu.syspro.parprog.helpers;
+
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+
+/**
+ * Engines which take no time, for unit tests which do not need {@link TestEnvironment}.
+ */
+public final class TestEngines {
+    private TestEngines() {
+    }
+
+    /**
+     * Every call returns a new engine, i.e. a new {@code JitRuntime} with its own caches and metrics.
+     */
+    public static CompilationEngine instantCompiler() {
+        return new CompilationEngine() {
+            @Override
+            public CompiledMethod compile_l1(MethodID method) {
+                return () -> method;
+            }
+
+            @Override
+            public CompiledMethod compile_l2(MethodID method) {
+                return () -> method;
+            }
+        };
+    }
+
+    public static ExecutionEngine exec(ExecutionResult result) {
+        return exec(result, result);
+    }
+
+    /**
+     * @return engine which returns {@code interpreted} for interpreted calls and {@code executed} for compiled ones
+     */
+    public static ExecutionEngine exec(ExecutionResult interpreted, ExecutionResult executed) {
+        return new ExecutionEngine() {
+            @Override
+            public ExecutionResult interpret(MethodID id) {
+                return interpreted;
+            }
+
+            @Override
+            public ExecutionResult execute(CompiledMethod method) {
+                return executed;
+            }
+        };
+    }
+}
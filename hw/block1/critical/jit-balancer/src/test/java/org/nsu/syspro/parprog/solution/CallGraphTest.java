@@ -0,0 +1,87 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CallGraphTest {
+    private static final long CALLER = 0xCA11_0024L;
+    private static final long CALLEE = 0xCA11_0025L;
+
+    @Test
+    void callees_are_recorded_once() {
+        final var states = new CompilationStates();
+        final MethodProfile caller = new MethodProfile(() -> 1, states.of(1), 0);
+        final MethodProfile[] callees = new MethodProfile[MethodProfile.MAX_CALLEES + 1];
+        for (int i = 0; i < callees.length; i++) {
+            final long id = i + 2;
+            callees[i] = new MethodProfile(() -> id, states.of(id), 0);
+        }
+        assertEquals(0, caller.calleeCount());
+        assertTrue(caller.addCallee(callees[0]));
+        assertFalse(caller.addCallee(callees[0]));
+        assertTrue(caller.addCallee(callees[1]));
+        assertFalse(caller.addCallee(callees[0]));
+        for (int i = 2; i < callees.length; i++) {
+            assertEquals(i < MethodProfile.MAX_CALLEES, caller.addCallee(callees[i]));
+        }
+        assertEquals(MethodProfile.MAX_CALLEES, caller.calleeCount());
+        assertSame(callees[1], caller.callee(1));
+    }
+
+    @Test
+    @Timeout(20)
+    void callee_of_compiled_caller_is_compiled_ahead() throws InterruptedException {
+        final CompilationEngine compiler = TestEngines.instantCompiler();
+        final int[] calls = new int[1];
+        final ExecutionEngine exec = new ExecutionEngine() {
+            @Override
+            public ExecutionResult interpret(MethodID method) {
+                return body(method);
+            }
+
+            @Override
+            public ExecutionResult execute(CompiledMethod method) {
+                return body(method.id());
+            }
+
+            private ExecutionResult body(MethodID method) {
+                if (method.id() == CALLER && calls[0]++ % 4 == 0) {
+                    UserThread.current().executeMethod(() -> CALLEE);
+                }
+                return new ExecutionResult() {
+                };
+            }
+        };
+        final TieredPolicy policy = TieredPolicy.balanced();
+        final long l1Threshold = policy.threshold(TieredCode.L1);
+        final Throwable[] failure = new Throwable[1];
+        final SolutionThread user = new SolutionThread(2, exec, compiler, () -> {
+            try {
+                final MethodState callee = JitRuntime.of(compiler, 2).states.of(CALLEE);
+                while (calls[0] < l1Threshold * 2 && MethodState.readyTier(callee.word()) < TieredCode.L1) {
+                    UserThread.current().executeMethod(() -> CALLER);
+                    if (calls[0] > l1Threshold) {
+                        Thread.yield(); // let the compiler thread run on a single core
+                    }
+                }
+                // the callee alone has been called a half of its threshold at most
+                assertTrue(calls[0] / 4 < l1Threshold / 2, () -> "calls: " + calls[0]);
+                assertEquals(TieredCode.L1, MethodState.readyTier(callee.word()));
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, policy);
+        user.start();
+        user.join();
+        assertNull(failure[0]);
+    }
+}
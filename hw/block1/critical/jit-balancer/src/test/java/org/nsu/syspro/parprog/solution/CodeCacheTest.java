@@ -0,0 +1,171 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.MethodID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CodeCacheTest {
+
+    @Test
+    void publish_only_upgrades() {
+        final var cache = new CodeCache();
+        final MethodID method = () -> 17;
+        final CompiledMethod l1 = () -> method;
+        final CompiledMethod l2 = () -> method;
+
+        assertNull(cache.lookup(17));
+
+        assertSame(l1, cache.publish(l1, TieredCode.L1).code);
+        assertEquals(TieredCode.L1, cache.lookup(17).tier);
+
+        assertSame(l2, cache.publish(l2, TieredCode.L2).code);
+        assertSame(l2, cache.lookup(17).code);
+
+        // late L1 compilation never downgrades already published L2 code
+        assertSame(l2, cache.publish(l1, TieredCode.L1).code);
+        assertEquals(TieredCode.L2, cache.lookup(17).tier);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void invalidated_code_is_dropped_and_late_code_discarded() {
+        final var cache = new CodeCache();
+        final var state = new MethodState(17);
+        final MethodID method = () -> 17;
+        assertTrue(state.tryQueueL1());
+        cache.publish(state, () -> method, TieredCode.L1);
+        state.completeL1();
+        final CodeSnapshot before = cache.snapshot();
+
+        cache.invalidate(state);
+        assertNull(cache.lookup(17));
+        assertNull(cache.snapshot().lookup(17));
+        assertEquals(TieredCode.L1, before.lookup(17).tier); // readers of the old snapshot are handled by Deoptimizer
+        assertEquals(0, cache.footprint());
+
+        // compiled before the invalidation, published after it
+        assertTrue(state.tryQueueL1());
+        cache.invalidate(state);
+        assertNull(cache.publish(state, () -> method, TieredCode.L1));
+        state.completeL1();
+        assertNull(cache.lookup(17));
+        assertEquals(MethodState.NEVER_COMPILED, MethodState.phase(state.word()));
+    }
+
+    @Test
+    void snapshot_is_versioned_and_immutable() {
+        final var cache = new CodeCache();
+        final CodeSnapshot empty = cache.snapshot();
+        assertNull(empty.lookup(1));
+
+        for (long i = 0; i < 100; i++) {
+            final long id = i;
+            final MethodID method = () -> id;
+            cache.publish(() -> method, TieredCode.L1);
+        }
+        final CodeSnapshot filled = cache.snapshot();
+        assertEquals(empty.version + 100, filled.version);
+        assertEquals(100, filled.size());
+        for (long i = 0; i < 100; i++) {
+            assertEquals(TieredCode.L1, filled.lookup(i).tier);
+        }
+        assertNull(filled.lookup(100));
+        assertNull(empty.lookup(0)); // old readers keep their consistent view
+
+        final MethodID method = () -> 5;
+        final CompiledMethod l2 = () -> method;
+        cache.publish(l2, TieredCode.L2);
+        assertSame(l2, cache.snapshot().lookup(5).code);
+        assertEquals(TieredCode.L1, filled.lookup(5).tier);
+
+        // publication without an upgrade does not produce a new version
+        final long version = cache.snapshot().version;
+        cache.publish(() -> method, TieredCode.L1);
+        assertEquals(version, cache.snapshot().version);
+    }
+
+    @Test
+    void concurrent_publications_all_reach_snapshot() throws InterruptedException {
+        final var cache = new CodeCache();
+        final int threads = 4;
+        final int perThread = 500;
+        final Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int base = t * perThread;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    final long id = base + i;
+                    final MethodID method = () -> id;
+                    cache.publish(() -> method, TieredCode.L1);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread w : writers) {
+            w.join();
+        }
+        final CodeSnapshot snapshot = cache.snapshot();
+        assertEquals(threads * perThread, snapshot.size());
+        for (long id = 0; id < threads * perThread; id++) {
+            assertNotNull(snapshot.lookup(id));
+        }
+    }
+
+    private static TieredCode compileL1(CodeCache cache, MethodState state) {
+        assertTrue(state.tryQueueL1());
+        final MethodID method = () -> state.id;
+        final TieredCode code = cache.publish(state, () -> method, TieredCode.L1);
+        state.completeL1();
+        return code;
+    }
+
+    @Test
+    void clock_evicts_cold_l1_code_within_budget() {
+        final var cache = new CodeCache(2 * CodeCache.L1_FOOTPRINT);
+        final var first = new MethodState(1);
+        final var second = new MethodState(2);
+        final var third = new MethodState(3);
+        compileL1(cache, first);
+        compileL1(cache, second);
+        assertEquals(2 * CodeCache.L1_FOOTPRINT, cache.footprint());
+
+        // all entries are fresh: the first turn only clears reference bits
+        compileL1(cache, third);
+        assertEquals(1, cache.evictions());
+        assertNull(cache.lookup(1));
+        assertNull(cache.snapshot().lookup(1));
+        assertTrue(MethodState.l1Evicted(first.word()));
+        assertEquals(2 * CodeCache.L1_FOOTPRINT, cache.footprint());
+
+        // the method which got hotter gets a second chance, the cold one goes
+        second.publishGlobalHotness(100);
+        compileL1(cache, new MethodState(4));
+        assertEquals(2, cache.evictions());
+        assertNotNull(cache.lookup(2));
+        assertNull(cache.lookup(3));
+        assertNotNull(cache.snapshot().lookup(4));
+
+        // evicted method is compiled again, now it is pinned
+        compileL1(cache, first);
+        assertNotNull(cache.snapshot().lookup(1));
+        assertEquals(2, MethodState.l1Compilations(first.word()));
+        assertFalse(first.evictL1());
+    }
+
+    @Test
+    void l2_code_is_pinned() {
+        final var cache = new CodeCache(1);
+        final var state = new MethodState(7);
+        compileL1(cache, state);
+        assertTrue(state.tryQueueL2());
+        final MethodID method = () -> 7;
+        cache.publish(state, () -> method, TieredCode.L2);
+        state.completeL2();
+
+        assertEquals(TieredCode.L2, cache.lookup(7).tier);
+        assertEquals(CodeCache.L2_FOOTPRINT, cache.footprint());
+        assertEquals(0, cache.evictions());
+    }
+}
@@ -0,0 +1,113 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompileQueueTest {
+
+    private static CompileRequest request(long id, long heat) {
+        final MethodState state = new MethodState(id);
+        assertTrue(state.tryQueueL1());
+        state.addHeat(heat);
+        return new CompileRequest(() -> id, state, TieredCode.L1);
+    }
+
+    @Test
+    void hottest_first() {
+        final var queue = new CompileQueue(1);
+        final CompileRequest lukewarm = request(1, 10);
+        final CompileRequest hot = request(2, 1_000);
+        final CompileRequest warm = request(3, 100);
+        queue.offer(lukewarm);
+        queue.offer(hot);
+        queue.offer(warm);
+
+        final long now = System.nanoTime();
+        assertSame(hot, queue.poll(now));
+        assertSame(warm, queue.poll(now));
+        assertSame(lukewarm, queue.poll(now));
+        assertNull(queue.poll(now));
+    }
+
+    @Test
+    void heat_reported_while_queued_reorders() {
+        final var queue = new CompileQueue(1);
+        final CompileRequest first = request(1, 100);
+        final CompileRequest second = request(2, 50);
+        queue.offer(first);
+        queue.offer(second);
+
+        second.state.addHeat(100);
+        assertSame(second, queue.poll(System.nanoTime()));
+    }
+
+    @Test
+    void old_requests_age_upward() throws InterruptedException {
+        final var queue = new CompileQueue(10);
+        final CompileRequest cold = request(1, 0);
+        queue.offer(cold);
+
+        Thread.sleep(50);
+        // cold request waited for 50ms and earned at least 500 points, fresh one is hotter but younger
+        final CompileRequest hot = request(2, 100);
+        queue.offer(hot);
+
+        assertSame(cold, queue.poll(System.nanoTime()));
+        assertSame(hot, queue.poll(System.nanoTime()));
+    }
+
+    @Test
+    void batch_is_hottest_first_and_single_tier() {
+        final var queue = new CompileQueue(1);
+        final CompileRequest cold = request(1, 10);
+        final CompileRequest hot = request(2, 1_000);
+        final MethodState l2State = new MethodState(3);
+        assertTrue(l2State.tryQueueL1());
+        l2State.completeL1();
+        assertTrue(l2State.tryQueueL2());
+        l2State.addHeat(500);
+        final CompileRequest l2 = new CompileRequest(() -> 3, l2State, TieredCode.L2);
+        queue.offer(cold);
+        queue.offer(l2);
+        queue.offer(hot);
+
+        final long now = System.nanoTime();
+        final var batch = new ArrayList<CompileRequest>();
+        assertEquals(2, queue.pollBatch(now, 8, batch));
+        assertEquals(2, batch.size());
+        assertSame(hot, batch.get(0));
+        assertSame(cold, batch.get(1));
+
+        batch.clear();
+        assertEquals(1, queue.pollBatch(now, 8, batch));
+        assertSame(l2, batch.get(0));
+        assertEquals(0, queue.pollBatch(now, 8, batch));
+    }
+
+    @Test
+    void preferred_tier_never_overtakes_blocked_request() {
+        final var queue = new CompileQueue(1);
+        final CompileRequest l1 = request(1, 1_000);
+        final MethodState l2State = new MethodState(2);
+        assertTrue(l2State.tryQueueL1());
+        l2State.completeL1();
+        assertTrue(l2State.tryQueueL2());
+        final CompileRequest l2 = new CompileRequest(() -> 2, l2State, TieredCode.L2);
+        queue.offer(l1);
+        queue.offer(l2);
+
+        final long now = System.nanoTime();
+        final var batch = new ArrayList<CompileRequest>();
+        assertEquals(1, queue.pollBatch(now, 1, TieredCode.L1, batch));
+        assertSame(l1, batch.get(0));
+        queue.offer(l1);
+
+        l2State.addHeat(SolutionThread.BLOCKED_HEAT);
+        batch.clear();
+        assertEquals(1, queue.pollBatch(now, 1, TieredCode.L1, batch));
+        assertSame(l2, batch.get(0));
+    }
+}
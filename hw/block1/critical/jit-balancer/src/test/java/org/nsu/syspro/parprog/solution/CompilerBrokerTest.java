@@ -0,0 +1,520 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompilerBrokerTest {
+    /**
+     * Compiles slowly and records the peak number of concurrent compilations.
+     */
+    static final class SlowCompiler implements CompilationEngine {
+        final AtomicInteger active = new AtomicInteger(0);
+        final AtomicInteger peak = new AtomicInteger(0);
+        final AtomicInteger total = new AtomicInteger(0);
+        final Thread forbidden;
+        final CountDownLatch gate;
+
+        SlowCompiler(Thread forbidden, CountDownLatch gate) {
+            this.forbidden = forbidden;
+            this.gate = gate;
+        }
+
+        private CompiledMethod compile(MethodID method) {
+            assertNotSame(forbidden, Thread.currentThread());
+            final int now = active.incrementAndGet();
+            peak.accumulateAndGet(now, Math::max);
+            try {
+                gate.await();
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                active.decrementAndGet();
+                total.incrementAndGet();
+            }
+            return () -> method;
+        }
+
+        @Override
+        public CompiledMethod compile_l1(MethodID method) {
+            return compile(method);
+        }
+
+        @Override
+        public CompiledMethod compile_l2(MethodID method) {
+            return compile(method);
+        }
+    }
+
+    private static CompileRequest l1Request(CompilationStates states, long id) {
+        final MethodState state = states.of(id);
+        assertTrue(state.tryQueueL1());
+        return new CompileRequest(() -> id, state, TieredCode.L1);
+    }
+
+    @Test
+    @Timeout(10)
+    void compilations_are_bounded_and_offloaded() throws InterruptedException {
+        final int METHODS = 50;
+        final CountDownLatch gate = new CountDownLatch(1);
+        final var compiler = new SlowCompiler(Thread.currentThread(), gate);
+        final var cache = new CodeCache();
+        final var states = new CompilationStates();
+        final var broker = new CompilerBroker(compiler, cache, 3, METHODS, 100, 1);
+
+        for (long id = 0; id < METHODS; id++) {
+            assertTrue(broker.submit(l1Request(states, id)));
+        }
+        gate.countDown();
+
+        for (long id = 0; id < METHODS; id++) {
+            final MethodState state = states.of(id);
+            while (MethodState.readyTier(state.word()) < TieredCode.L1) {
+                state.awaitChange(state.word(), 10);
+            }
+            assertEquals(TieredCode.L1, cache.lookup(id).tier);
+        }
+        assertEquals(METHODS, compiler.total.get());
+        assertTrue(compiler.peak.get() <= 3, "peak = " + compiler.peak.get());
+    }
+
+    @Test
+    @Timeout(10)
+    void user_thread_never_starts_compiler_threads() throws InterruptedException {
+        final ThreadGroup users = new ThreadGroup("users");
+        final ThreadGroup[] compiledIn = new ThreadGroup[1];
+        final var compiler = new CompilationEngine() {
+            @Override
+            public CompiledMethod compile_l1(MethodID method) {
+                compiledIn[0] = Thread.currentThread().getThreadGroup();
+                return () -> method;
+            }
+
+            @Override
+            public CompiledMethod compile_l2(MethodID method) {
+                return compile_l1(method);
+            }
+        };
+        final var broker = new CompilerBroker(compiler, new CodeCache(), 2, 16, 100, 1);
+        final var states = new CompilationStates();
+        final boolean[] submitted = new boolean[1];
+        final Thread user = new Thread(users, () -> submitted[0] = broker.submit(l1Request(states, 1)));
+        user.start();
+        user.join();
+        assertTrue(submitted[0]);
+        awaitTier(states.of(1), TieredCode.L1);
+        // a thread belongs to the group of the thread which created it
+        assertNotSame(users, compiledIn[0]);
+    }
+
+    @Test
+    @Timeout(10)
+    void full_queue_rejects_without_blocking() {
+        final CountDownLatch gate = new CountDownLatch(1);
+        final var compiler = new SlowCompiler(Thread.currentThread(), gate);
+        final var states = new CompilationStates();
+        final var broker = new CompilerBroker(compiler, new CodeCache(), 2, 4, 100, 1);
+
+        int accepted = 0;
+        for (long id = 0; id < 100; id++) {
+            final CompileRequest request = l1Request(states, id);
+            if (broker.submit(request)) {
+                accepted++;
+            } else {
+                request.cancel();
+                assertEquals(MethodState.NEVER_COMPILED, MethodState.phase(states.of(id).word()));
+            }
+        }
+        // at most `capacity` queued plus one in hands of each worker
+        assertTrue(accepted <= 4 + 2, "accepted = " + accepted);
+        gate.countDown();
+    }
+
+    /**
+     * Every call costs {@link #CALL_COST_MILLIS} regardless of the number of methods, e.g. compiler thread hand-off.
+     */
+    static final class FixedCostCompiler implements CompilationEngine {
+        static final long CALL_COST_MILLIS = 2;
+        final AtomicInteger calls = new AtomicInteger(0);
+        final AtomicInteger methods = new AtomicInteger(0);
+        private final boolean batch;
+
+        FixedCostCompiler() {
+            this(true);
+        }
+
+        /**
+         * @param batch whether {@link #compile_batch} is declared cheaper, see {@link #supportsBatch()}
+         */
+        FixedCostCompiler(boolean batch) {
+            this.batch = batch;
+        }
+
+        private void pay(int compiled) {
+            calls.incrementAndGet();
+            methods.addAndGet(compiled);
+            try {
+                Thread.sleep(CALL_COST_MILLIS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public CompiledMethod compile_l1(MethodID method) {
+            pay(1);
+            return () -> method;
+        }
+
+        @Override
+        public CompiledMethod compile_l2(MethodID method) {
+            return compile_l1(method);
+        }
+
+        @Override
+        public List<CompiledMethod> compile_batch(List<MethodID> methods, int level) {
+            pay(methods.size());
+            final CompiledMethod[] result = new CompiledMethod[methods.size()];
+            for (int i = 0; i < result.length; i++) {
+                final MethodID method = methods.get(i);
+                result[i] = () -> method;
+            }
+            return List.of(result);
+        }
+
+        @Override
+        public boolean supportsBatch() {
+            return batch;
+        }
+    }
+
+    /**
+     * Compiles a warm-up burst of {@code methods} methods.
+     */
+    private static void burst(FixedCostCompiler compiler, int methods, int maxBatch) throws InterruptedException {
+        final var states = new CompilationStates();
+        final var broker = new CompilerBroker(compiler, new CodeCache(), 2, methods, 100, 1, maxBatch);
+        for (long id = 0; id < methods; id++) {
+            assertTrue(broker.submit(l1Request(states, id)));
+        }
+        for (long id = 0; id < methods; id++) {
+            final MethodState state = states.of(id);
+            while (MethodState.readyTier(state.word()) < TieredCode.L1) {
+                state.awaitChange(state.word(), 10);
+            }
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void batching_amortizes_fixed_costs_under_burst() throws InterruptedException {
+        final int METHODS = 1_000;
+        final var single = new FixedCostCompiler();
+        burst(single, METHODS, 1);
+        final var batched = new FixedCostCompiler();
+        burst(batched, METHODS, 8);
+
+        assertEquals(METHODS, single.calls.get());
+        assertEquals(METHODS, batched.methods.get());
+        // throughput is compared by BatchBenchmark of the JMH module
+        assertTrue(batched.calls.get() < METHODS / 2, "calls = " + batched.calls.get());
+    }
+
+    @Test
+    void engine_without_batch_support_is_not_batched() throws InterruptedException {
+        final int METHODS = 100;
+        final var compiler = new FixedCostCompiler(false);
+        burst(compiler, METHODS, 8);
+        assertEquals(METHODS, compiler.calls.get());
+    }
+
+    @Test
+    void pool_size_follows_free_cores() {
+        // idle machine: the limit
+        assertEquals(4, CompilerPoolSizer.desiredWorkers(8, 0.0, 0, 1, 4));
+        // user threads saturate every core: a single worker keeps the backlog moving
+        assertEquals(1, CompilerPoolSizer.desiredWorkers(8, 1.0, 0, 1, 4));
+        // 3 of 4 cores are used by compilation itself, so they are not taken from user threads
+        assertEquals(3, CompilerPoolSizer.desiredWorkers(4, 1.0, 3, 1, 4));
+        // blocking compilations barely use a core and are never throttled
+        assertEquals(4, CompilerPoolSizer.desiredWorkers(4, 1.0, 0, 0.01, 4));
+    }
+
+    @Test
+    @Timeout(10)
+    void saturated_machine_shrinks_pool_but_backlog_progresses() throws InterruptedException {
+        final int METHODS = 20;
+        final CountDownLatch gate = new CountDownLatch(1);
+        final var compiler = new SlowCompiler(Thread.currentThread(), gate);
+        final var broker = new CompilerBroker(compiler, new CodeCache(), 4, METHODS, 100, 1);
+        final double[] load = {1.0};
+        long now = 0;
+        broker.setLoadSource(() -> load[0], 4, now);
+
+        for (int step = 0; step < 10; step++) {
+            broker.adapt(now += CompilerPoolSizer.PERIOD_NANOS);
+        }
+        assertEquals(1, broker.targetWorkers());
+
+        final var states = new CompilationStates();
+        for (int i = 0; i < METHODS; i++) {
+            assertTrue(broker.submit(l1Request(states, i)));
+        }
+        gate.countDown();
+        for (int i = 0; i < METHODS; i++) {
+            final MethodState state = states.of(i);
+            while (MethodState.readyTier(state.word()) < TieredCode.L1) {
+                state.awaitChange(state.word(), 10);
+            }
+        }
+        assertEquals(1, compiler.peak.get());
+        assertTrue(broker.workers() <= 1);
+
+        load[0] = 0.0;
+        broker.adapt(now += CompilerPoolSizer.PERIOD_NANOS);
+        assertEquals(2, broker.targetWorkers(), "one step per period");
+        for (int step = 0; step < 10; step++) {
+            broker.adapt(now += CompilerPoolSizer.PERIOD_NANOS);
+        }
+        assertEquals(4, broker.targetWorkers());
+        assertEquals(4, broker.metrics().snapshot().targetWorkers());
+    }
+
+    @Test
+    void worker_limit_is_a_knob() {
+        final var broker = new CompilerBroker(TestEngines.instantCompiler(), new CodeCache(), 4, 16, 100, 1);
+        assertThrows(IllegalArgumentException.class, () -> broker.setWorkerLimit(0));
+        assertThrows(IllegalArgumentException.class, () -> broker.setWorkerLimit(5));
+
+        broker.setWorkerLimit(2);
+        assertEquals(2, broker.targetWorkers());
+        broker.setAdaptive(false);
+        broker.setLoadSource(() -> 1.0, 4, 0);
+        broker.adapt(CompilerPoolSizer.PERIOD_NANOS * 10);
+        assertEquals(2, broker.targetWorkers(), "adaptation is off");
+    }
+
+    /**
+     * Counts compilations per tier, every L2 compilation waits for a permit of {@link #l2Permits}.
+     */
+    static final class TierCountingCompiler implements CompilationEngine {
+        final AtomicInteger l1 = new AtomicInteger(0);
+        final AtomicInteger l2 = new AtomicInteger(0);
+        final Semaphore l2Permits;
+
+        TierCountingCompiler(Semaphore l2Permits) {
+            this.l2Permits = l2Permits;
+        }
+
+        @Override
+        public CompiledMethod compile_l1(MethodID method) {
+            l1.incrementAndGet();
+            return () -> method;
+        }
+
+        @Override
+        public CompiledMethod compile_l2(MethodID method) {
+            try {
+                l2Permits.acquire();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            l2.incrementAndGet();
+            return () -> method;
+        }
+    }
+
+    private static void awaitTier(MethodState state, int tier) throws InterruptedException {
+        while (MethodState.readyTier(state.word()) < tier) {
+            state.awaitChange(state.word(), 10);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void queued_l1_of_l2_hot_method_is_skipped() throws InterruptedException {
+        final var compiler = new TierCountingCompiler(new Semaphore(Integer.MAX_VALUE));
+        final var broker = new CompilerBroker(compiler, new CodeCache(), 2, 16, 100, 1);
+        broker.setTierSkipping(TieredPolicy.of(10, 100, TieredPolicy.NO_DECAY));
+        final var states = new CompilationStates();
+
+        final MethodState hot = states.of(1);
+        hot.publishGlobalHotness(1_000);
+        assertTrue(broker.request(() -> 1, hot, TieredCode.L1));
+        awaitTier(hot, TieredCode.L2);
+
+        final MethodState lukewarm = states.of(2);
+        lukewarm.publishGlobalHotness(50);
+        assertTrue(broker.request(() -> 2, lukewarm, TieredCode.L1));
+        awaitTier(lukewarm, TieredCode.L1);
+
+        assertEquals(1, compiler.l1.get());
+        assertEquals(1, compiler.l2.get());
+        assertEquals(1, broker.metrics().snapshot().skippedL1());
+    }
+
+    @Test
+    @Timeout(10)
+    void l2_flood_does_not_starve_l1() throws InterruptedException {
+        final int L2_METHODS = 10;
+        final Semaphore l2Permits = new Semaphore(0);
+        final var compiler = new TierCountingCompiler(l2Permits);
+        final var broker = new CompilerBroker(compiler, new CodeCache(), 2, 64, 100, 1);
+        final var states = new CompilationStates();
+
+        for (long i = 0; i < L2_METHODS; i++) {
+            final long id = i;
+            final MethodState state = states.of(id);
+            assertTrue(state.tryQueueL1());
+            state.completeL1();
+            state.publishGlobalHotness(1_000_000); // much hotter than the L1 request below
+            assertTrue(broker.request(() -> id, state, TieredCode.L2));
+        }
+        final MethodState cold = states.of(100);
+        assertTrue(broker.request(() -> 100, cold, TieredCode.L1));
+
+        // at most both workers are stuck in L2, the one freed by the permit must take L1 right after it
+        l2Permits.release();
+        awaitTier(cold, TieredCode.L1);
+        assertTrue(compiler.l2.get() <= 1, "l2 = " + compiler.l2.get());
+        l2Permits.release(L2_METHODS);
+        for (long id = 0; id < L2_METHODS; id++) {
+            awaitTier(states.of(id), TieredCode.L2);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void single_worker_does_not_starve_l2() throws InterruptedException {
+        final int L1_METHODS = 10;
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger l1 = new AtomicInteger(0);
+        final AtomicInteger l1BeforeL2 = new AtomicInteger(-1);
+        final var compiler = new CompilationEngine() {
+            @Override
+            public CompiledMethod compile_l1(MethodID method) {
+                if (l1.getAndIncrement() == 0) {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return () -> method;
+            }
+
+            @Override
+            public CompiledMethod compile_l2(MethodID method) {
+                l1BeforeL2.set(l1.get());
+                return () -> method;
+            }
+        };
+        final var broker = new CompilerBroker(compiler, new CodeCache(), 1, 64, 100, 1);
+        final var states = new CompilationStates();
+        assertTrue(broker.request(() -> 100, states.of(100), TieredCode.L1));
+        while (l1.get() == 0) {
+            Thread.sleep(1); // the only worker holds the first L1 compilation
+        }
+
+        for (long i = 0; i < L1_METHODS; i++) {
+            final long id = i;
+            final MethodState state = states.of(id);
+            state.publishGlobalHotness(1_000);
+            assertTrue(broker.request(() -> id, state, TieredCode.L1));
+        }
+        final MethodState hot = states.of(50);
+        assertTrue(hot.tryQueueL1());
+        hot.completeL1();
+        hot.publishGlobalHotness(1_000_000); // nobody is blocked, see CompileQueueTest for blocked requests
+        assertTrue(broker.request(() -> 50, hot, TieredCode.L2));
+
+        gate.countDown();
+        awaitTier(hot, TieredCode.L2);
+        assertEquals(1, l1BeforeL2.get());
+    }
+
+    /**
+     * Throws on every call, as an engine which cannot compile some method.
+     */
+    static final class FailingCompiler implements CompilationEngine {
+        final AtomicInteger l1 = new AtomicInteger(0);
+        final AtomicInteger l2 = new AtomicInteger(0);
+
+        @Override
+        public CompiledMethod compile_l1(MethodID method) {
+            l1.incrementAndGet();
+            throw new IllegalStateException("cannot compile " + method.id());
+        }
+
+        @Override
+        public CompiledMethod compile_l2(MethodID method) {
+            l2.incrementAndGet();
+            throw new IllegalStateException("cannot compile " + method.id());
+        }
+    }
+
+    private static void awaitFailure(MethodState state) throws InterruptedException {
+        while (!MethodState.failed(state.word())) {
+            state.awaitChange(state.word(), 10);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void failing_engine_is_never_called_again() throws InterruptedException {
+        final var compiler = new FailingCompiler();
+        final var broker = new CompilerBroker(compiler, new CodeCache(), 2, 16, 100, 1);
+        final var states = new CompilationStates();
+
+        final MethodState l1 = states.of(1);
+        assertTrue(broker.request(() -> 1, l1, TieredCode.L1));
+        awaitFailure(l1);
+        assertEquals(MethodState.NEVER_COMPILED, MethodState.phase(l1.word()));
+        assertFalse(broker.request(() -> 1, l1, TieredCode.L1));
+
+        final MethodState l2 = states.of(2);
+        assertTrue(l2.tryQueueL1());
+        l2.completeL1();
+        assertTrue(broker.request(() -> 2, l2, TieredCode.L2));
+        awaitFailure(l2);
+        assertEquals(TieredCode.L1, MethodState.readyTier(l2.word())); // L1 code stays in use
+        assertFalse(broker.request(() -> 2, l2, TieredCode.L2));
+        assertFalse(l2.evictL1());
+
+        assertEquals(1, compiler.l1.get());
+        assertEquals(1, compiler.l2.get());
+    }
+
+    @Test
+    @Timeout(20)
+    void thread_at_deadline_does_not_wait_for_failed_compilation() throws InterruptedException {
+        final var compiler = new FailingCompiler();
+        final Throwable[] failure = new Throwable[1];
+        final SolutionThread user = new SolutionThread(2, TestEngines.exec(null), compiler, () -> {
+            try {
+                for (int i = 0; i < SolutionThread.L1_DEADLINE + 100; i++) {
+                    UserThread.current().executeMethod(() -> 3);
+                }
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        });
+        user.start();
+        user.join();
+        assertNull(failure[0]);
+        assertEquals(1, compiler.l1.get());
+        assertEquals(0, compiler.l2.get());
+    }
+}
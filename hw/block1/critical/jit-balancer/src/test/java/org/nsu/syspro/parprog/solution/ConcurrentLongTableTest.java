@@ -0,0 +1,135 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentLongTableTest {
+
+    private static void runConcurrently(int threads, Runnable body) throws InterruptedException {
+        final ArrayList<Thread> started = new ArrayList<>();
+        final ArrayList<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Thread thread = new Thread(body);
+            thread.setUncaughtExceptionHandler((th, e) -> {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+            });
+            started.add(thread);
+            thread.start();
+        }
+        for (Thread thread : started) {
+            thread.join();
+        }
+        assertTrue(errors.isEmpty(), () -> "Worker failed: " + errors);
+    }
+
+    @Test
+    void single_thread_basics() {
+        final var table = new ConcurrentLongTable<String>();
+        assertNull(table.get(42));
+        assertNull(table.putIfAbsent(42, "a"));
+        assertEquals("a", table.putIfAbsent(42, "b"));
+        assertEquals("a", table.get(42));
+
+        assertFalse(table.replace(42, "b", "c"));
+        assertTrue(table.replace(42, "a", "c"));
+        assertEquals("c", table.get(42));
+        assertFalse(table.replace(7, "c", "d"));
+
+        assertNull(table.putIfAbsent(Long.MIN_VALUE, "min"));
+        assertNull(table.putIfAbsent(-1, "minus one"));
+        assertEquals("min", table.get(Long.MIN_VALUE));
+        assertEquals("minus one", table.get(-1));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    void growth_keeps_all_keys() {
+        final var table = new ConcurrentLongTable<Long>();
+        for (long k = 0; k < 10_000; k++) {
+            assertNull(table.putIfAbsent(k * 31, k));
+        }
+        for (long k = 0; k < 10_000; k++) {
+            assertEquals(k, table.get(k * 31));
+        }
+        assertEquals(10_000, table.size());
+
+        final long[] visited = {0};
+        table.forEach((key, value) -> {
+            assertEquals(key, value * 31);
+            visited[0]++;
+        });
+        assertEquals(10_000, visited[0]);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 4, 16})
+    @Timeout(10)
+    void exactly_one_insertion_wins(int threads) throws InterruptedException {
+        final int KEYS = 20_000;
+        final var table = new ConcurrentLongTable<Thread>();
+        final AtomicLong wins = new AtomicLong(0);
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+
+        runConcurrently(threads, () -> {
+            await(barrier);
+            for (long k = 0; k < KEYS; k++) {
+                final Thread winner = table.putIfAbsent(k, Thread.currentThread());
+                if (winner == null) {
+                    wins.incrementAndGet();
+                }
+                // the key never disappears, even while the table is migrating
+                assertNotNull(table.get(k));
+            }
+        });
+
+        assertEquals(KEYS, wins.get());
+        assertEquals(KEYS, table.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 8})
+    @Timeout(10)
+    void replace_is_linearizable_during_growth(int threads) throws InterruptedException {
+        final int KEYS = 2_000;
+        final int INCREMENTS = 50;
+        final var table = new ConcurrentLongTable<Long>();
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+
+        runConcurrently(threads, () -> {
+            await(barrier);
+            for (int round = 0; round < INCREMENTS; round++) {
+                for (long k = 0; k < KEYS; k++) {
+                    table.putIfAbsent(k, 0L);
+                    while (true) {
+                        final Long current = table.get(k);
+                        if (table.replace(k, current, current + 1)) {
+                            break;
+                        }
+                    }
+                }
+            }
+        });
+
+        for (long k = 0; k < KEYS; k++) {
+            assertEquals((long) threads * INCREMENTS, table.get(k));
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
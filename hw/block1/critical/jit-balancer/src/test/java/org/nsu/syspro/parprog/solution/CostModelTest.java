@@ -0,0 +1,90 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CostModelTest {
+    private static final ExecutionResult RESULT = new ExecutionResult() {
+    };
+
+    @Test
+    void compiles_only_if_saved_time_pays_off() {
+        final CostModel model = new CostModel(2);
+        final MethodState state = new MethodState(1);
+
+        // nothing measured: defer to the count-based policy
+        assertTrue(model.worthCompiling(state, TieredCode.L1, 10, 1_000_000));
+        state.recordExecutionCost(TieredCode.INTERPRETED, 1_000);
+        assertTrue(model.worthCompiling(state, TieredCode.L1, 10, 0));
+
+        // 1000ns saved in half: 500ns per invocation
+        assertFalse(model.worthCompiling(state, TieredCode.L1, 1_999, 1_000_000));
+        assertTrue(model.worthCompiling(state, TieredCode.L1, 2_000, 1_000_000));
+
+        // L1 not sampled yet: estimated as 500ns, i.e. 250ns saved per invocation
+        assertFalse(model.worthCompiling(state, TieredCode.L2, 3_999, 1_000_000));
+        assertTrue(model.worthCompiling(state, TieredCode.L2, 4_000, 1_000_000));
+        state.recordExecutionCost(TieredCode.L1, 100);
+        assertFalse(model.worthCompiling(state, TieredCode.L2, 4_000, 1_000_000));
+
+        assertThrows(IllegalArgumentException.class, () -> new CostModel(1));
+    }
+
+    @Test
+    void blend_is_moving_average() {
+        assertEquals(1, CostModel.blend(0, 0));
+        assertEquals(800, CostModel.blend(0, 800));
+        assertEquals(900, CostModel.blend(800, 1_600));
+        assertEquals(700, CostModel.blend(800, 0));
+        assertEquals(900, CostModel.blend(800, 1_000_000_000)); // outlier
+    }
+
+    @Test
+    @Timeout(20)
+    void nearly_free_method_is_not_compiled_by_l2_before_deadline() throws InterruptedException {
+        final AtomicInteger l1 = new AtomicInteger(0);
+        final AtomicInteger l2 = new AtomicInteger(0);
+        final CompilationEngine compiler = new CompilationEngine() {
+            @Override
+            public CompiledMethod compile_l1(MethodID method) {
+                l1.incrementAndGet();
+                try {
+                    Thread.sleep(100); // an L2 compilation is assumed to cost as much
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return () -> method;
+            }
+
+            @Override
+            public CompiledMethod compile_l2(MethodID method) {
+                l2.incrementAndGet();
+                return () -> method;
+            }
+        };
+        final ExecutionEngine exec = TestEngines.exec(RESULT);
+        final MethodID method = () -> 0xC057_0021L;
+
+        final SolutionThread user = new SolutionThread(2, exec, compiler, () -> {
+            for (int i = 0; i < SolutionThread.L2_DEADLINE - 1; i++) {
+                UserThread.current().executeMethod(method);
+            }
+        }, OptimizationGoal.CPU_CYCLES);
+        user.start();
+        user.join();
+
+        assertEquals(1, l1.get()); // L1 deadline is kept regardless of the model
+        assertEquals(0, l2.get());
+    }
+}
@@ -0,0 +1,221 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeoptimizerTest {
+    private static final long OUTER = 0xDE09_0023L;
+    private static final long INNER = 0xDE09_0024L;
+
+    /**
+     * Compiles the current {@link #version} of every method, as if classes could be redefined.
+     */
+    static final class VersionedEngines implements CompilationEngine, ExecutionEngine {
+        volatile int version;
+        volatile Runnable body = () -> {
+        };
+
+        static final class Code implements CompiledMethod {
+            final MethodID method;
+            final int version;
+
+            Code(MethodID method, int version) {
+                this.method = method;
+                this.version = version;
+            }
+
+            @Override
+            public MethodID id() {
+                return method;
+            }
+        }
+
+        static final class Result implements ExecutionResult {
+            final int version; // -1 if interpreted
+
+            Result(int version) {
+                this.version = version;
+            }
+        }
+
+        @Override
+        public CompiledMethod compile_l1(MethodID method) {
+            return new Code(method, version);
+        }
+
+        @Override
+        public CompiledMethod compile_l2(MethodID method) {
+            return new Code(method, version);
+        }
+
+        @Override
+        public ExecutionResult interpret(MethodID id) {
+            if (id.id() == OUTER) {
+                body.run();
+            }
+            return new Result(-1);
+        }
+
+        @Override
+        public ExecutionResult execute(CompiledMethod method) {
+            if (method.id().id() == OUTER) {
+                body.run();
+            }
+            return new Result(((Code) method).version);
+        }
+    }
+
+    private static SolutionThread deoptimizing(VersionedEngines engines, Runnable r) {
+        final String previous = System.getProperty(Deoptimizer.PROPERTY);
+        System.setProperty(Deoptimizer.PROPERTY, "true"); // read once, by the fresh runtime
+        try {
+            return new SolutionThread(2, engines, engines, r);
+        } finally {
+            if (previous == null) {
+                System.clearProperty(Deoptimizer.PROPERTY);
+            } else {
+                System.setProperty(Deoptimizer.PROPERTY, previous);
+            }
+        }
+    }
+
+    private static VersionedEngines.Result call(long id) {
+        return (VersionedEngines.Result) UserThread.current().executeMethod(() -> id);
+    }
+
+    @Test
+    void monotonic_by_default() {
+        final VersionedEngines engines = new VersionedEngines();
+        final JitRuntime runtime = JitRuntime.of(engines, 2);
+        assertFalse(runtime.deoptimizer.enabled());
+        assertThrows(IllegalStateException.class, () -> runtime.deoptimizer.invalidate(OUTER));
+    }
+
+    @Test
+    @Timeout(20)
+    void invalidated_code_is_never_executed_again() throws InterruptedException {
+        final VersionedEngines engines = new VersionedEngines();
+        final CountDownLatch compiled = new CountDownLatch(1);
+        final CountDownLatch invalidated = new CountDownLatch(1);
+        final Throwable[] failure = new Throwable[1];
+        final SolutionThread user = deoptimizing(engines, () -> {
+            try {
+                int calls = 0;
+                while (call(OUTER).version != 0) {
+                    calls++;
+                }
+                assertTrue(calls < SolutionThread.L2_DEADLINE);
+                compiled.countDown();
+                invalidated.await();
+                // the very next call already misses the old code, the new one is compiled again
+                int version = call(OUTER).version;
+                assertNotEquals(0, version);
+                for (int i = 0; i < SolutionThread.L2_DEADLINE && version != 1; i++) {
+                    version = call(OUTER).version;
+                    assertNotEquals(0, version);
+                }
+                assertEquals(1, version);
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        });
+        final Deoptimizer deoptimizer = JitRuntime.of(engines, 2).deoptimizer;
+        user.start();
+        compiled.await();
+        engines.version = 1;
+        deoptimizer.invalidate(OUTER);
+        invalidated.countDown();
+        user.join();
+        assertNull(failure[0]);
+        assertTrue(deoptimizer.reclaimed(deoptimizer.epoch()));
+        assertEquals(0, deoptimizer.pending());
+    }
+
+    @Test
+    @Timeout(20)
+    void stale_code_on_the_stack_holds_reclamation() throws InterruptedException {
+        final VersionedEngines engines = new VersionedEngines();
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch invalidated = new CountDownLatch(1);
+        final CountDownLatch checked = new CountDownLatch(1);
+        final CountDownLatch returned = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final SolutionThread user = deoptimizing(engines, () -> {
+            try {
+                while (call(OUTER).version != 0) {
+                    // warm up
+                }
+                engines.body = () -> {
+                    engines.body = () -> {
+                    };
+                    try {
+                        running.countDown();
+                        invalidated.await();
+                        call(INNER); // catches up, but the frame below still runs stale code
+                        checked.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                };
+                call(OUTER);
+                call(INNER); // top level: nothing stale on the stack
+                returned.countDown();
+                done.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        final Deoptimizer deoptimizer = JitRuntime.of(engines, 2).deoptimizer;
+        user.start();
+        running.await();
+        final long epoch = deoptimizer.invalidate(OUTER);
+        invalidated.countDown();
+        Thread.sleep(50);
+        assertFalse(deoptimizer.reclaimed(epoch));
+        assertEquals(1, deoptimizer.pending());
+        checked.countDown();
+        returned.await();
+        assertTrue(deoptimizer.reclaimed(epoch));
+        assertEquals(0, deoptimizer.pending());
+        done.countDown();
+        user.join();
+    }
+
+    @Test
+    @Timeout(20)
+    void calls_never_wait_for_invalidation() throws InterruptedException {
+        final VersionedEngines engines = new VersionedEngines();
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch called = new CountDownLatch(1);
+        final SolutionThread user = deoptimizing(engines, () -> {
+            running.countDown();
+            try {
+                go.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            call(OUTER);
+            called.countDown();
+        });
+        final Deoptimizer deoptimizer = JitRuntime.of(engines, 2).deoptimizer;
+        user.start();
+        running.await();
+        synchronized (deoptimizer) { // as if `invalidate` or `reclaim` were running
+            go.countDown();
+            assertTrue(called.await(5, TimeUnit.SECONDS));
+        }
+        user.join();
+    }
+}
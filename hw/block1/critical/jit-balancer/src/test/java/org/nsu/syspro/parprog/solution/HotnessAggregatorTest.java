@@ -0,0 +1,124 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotnessAggregatorTest {
+
+    private static MethodProfile profile(HotnessStripe stripe, CompilationStates states, long id, int invocations) {
+        final MethodProfile p = new MethodProfile(() -> id, states.of(id), 0);
+        p.invocations = invocations;
+        p.publish();
+        stripe.add(p);
+        return p;
+    }
+
+    @Test
+    @Timeout(10)
+    void lukewarm_everywhere_is_hot_globally() throws InterruptedException {
+        final var states = new CompilationStates();
+        final var broker = new CompilerBroker(TestEngines.instantCompiler(), new CodeCache(), 2, 16, 100, 1);
+        // background thread never wakes up during the test, rounds are triggered manually
+        final var aggregator = new HotnessAggregator(broker, TieredPolicy.of(1_000, 10_000, TieredPolicy.NO_DECAY), 3_600_000);
+
+        for (int t = 0; t < 100; t++) {
+            final var stripe = new HotnessStripe(Thread.currentThread());
+            profile(stripe, states, 1, 20);
+            aggregator.register(stripe);
+        }
+
+        assertFalse(aggregator.aggregate());
+        final MethodState state = states.of(1);
+        assertEquals(2_000, state.globalHotness());
+
+        // nobody invoked it 1_000 times, but all threads together did
+        while (MethodState.readyTier(state.word()) < TieredCode.L1) {
+            state.awaitChange(state.word(), 10);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void terminated_threads_are_folded() throws InterruptedException {
+        final var states = new CompilationStates();
+        final var broker = new CompilerBroker(TestEngines.instantCompiler(), new CodeCache(), 2, 16, 100, 1);
+        final var aggregator = new HotnessAggregator(broker, TieredPolicy.of(1_000_000, 10_000_000, TieredPolicy.NO_DECAY), 3_600_000);
+
+        final Thread finished = new Thread(() -> {
+        });
+        finished.start();
+        finished.join();
+
+        final var dead = new HotnessStripe(finished);
+        profile(dead, states, 7, 300);
+        aggregator.register(dead);
+
+        final var alive = new HotnessStripe(Thread.currentThread());
+        final MethodProfile live = profile(alive, states, 7, 50);
+        aggregator.register(alive);
+
+        assertFalse(aggregator.aggregate());
+        assertEquals(350, states.of(7).globalHotness());
+
+        live.invocations = 60;
+        live.publish();
+        assertFalse(aggregator.aggregate());
+        // dead stripe is dropped but its contribution stays
+        assertEquals(360, states.of(7).globalHotness());
+    }
+
+    @Test
+    @Timeout(10)
+    void never_started_thread_is_not_tracked() throws InterruptedException {
+        final CompilationEngine compiler = TestEngines.instantCompiler();
+        final ExecutionEngine exec = TestEngines.exec(null);
+        new SolutionThread(2, exec, compiler, () -> {
+        });
+        final JitRuntime runtime = JitRuntime.of(compiler, 2);
+        assertEquals(0, runtime.hotness.stripes());
+
+        final SolutionThread user = new SolutionThread(2, exec, compiler, () ->
+                UserThread.current().executeMethod(() -> 1));
+        user.start();
+        user.join();
+        while (runtime.hotness.stripes() != 0) {
+            Thread.sleep(10); // retired by the next aggregation round
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void first_call_does_not_wait_for_registry() throws InterruptedException {
+        final CompilationEngine compiler = TestEngines.instantCompiler();
+        final JitRuntime runtime = JitRuntime.of(compiler, 2);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch called = new CountDownLatch(1);
+        final SolutionThread user = new SolutionThread(2, TestEngines.exec(null), compiler, () -> {
+            running.countDown();
+            try {
+                go.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            UserThread.current().executeMethod(() -> 1);
+            called.countDown();
+        });
+        user.start();
+        running.await();
+        synchronized (runtime.hotness) { // the aggregator holds it for a whole round
+            go.countDown();
+            assertTrue(called.await(5, TimeUnit.SECONDS));
+        }
+        user.join();
+    }
+}
@@ -0,0 +1,81 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotnessSamplerTest {
+
+    @Test
+    void exact_mode_samples_everything() {
+        final var sampler = new HotnessSampler(0, 42);
+        assertEquals(1, sampler.weight());
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(sampler.sample());
+        }
+    }
+
+    @Test
+    void sampled_estimate_is_close() {
+        final int INVOCATIONS = 1_000_000;
+        for (int shift = 1; shift <= 6; shift++) {
+            final var sampler = new HotnessSampler(shift, shift);
+            long estimate = 0;
+            for (int i = 0; i < INVOCATIONS; i++) {
+                if (sampler.sample()) {
+                    estimate += sampler.weight();
+                }
+            }
+            final double error = Math.abs(estimate - INVOCATIONS) / (double) INVOCATIONS;
+            assertTrue(error < 0.05, "shift = " + shift + ", estimate = " + estimate);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new HotnessSampler(31, 1));
+    }
+
+    @Test
+    @Timeout(10)
+    void sampling_keeps_eventual_progress() throws InterruptedException {
+        final ExecutionResult done = new ExecutionResult() {
+        };
+        final AtomicInteger interpreted = new AtomicInteger(0);
+        final AtomicInteger compiled = new AtomicInteger(0);
+        final ExecutionEngine exec = new ExecutionEngine() {
+            @Override
+            public ExecutionResult interpret(MethodID id) {
+                interpreted.incrementAndGet();
+                return done;
+            }
+
+            @Override
+            public ExecutionResult execute(CompiledMethod method) {
+                compiled.incrementAndGet();
+                return done;
+            }
+        };
+        final CompilationEngine compiler = TestEngines.instantCompiler();
+
+        // policy alone would never compile anything, only deadlines are left
+        final TieredPolicy lazy = TieredPolicy.sampled(Long.MAX_VALUE, Long.MAX_VALUE, TieredPolicy.NO_DECAY, 6);
+        final MethodID method = () -> 77;
+        final UserThread thread = new SolutionThread(2, exec, compiler, () -> {
+            for (int i = 0; i < 10_000; i++) {
+                UserThread.current().executeMethod(method);
+            }
+        }, lazy);
+        thread.start();
+        thread.join();
+
+        assertTrue(interpreted.get() < 10_000, "interpreted = " + interpreted.get());
+        assertTrue(compiled.get() > 0);
+    }
+}
@@ -0,0 +1,80 @@
+package org.nsu.syspro.parprog.solution;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JitEventsTest {
+    private static final ExecutionResult RESULT = new ExecutionResult() {
+    };
+
+    private static final ExecutionEngine EXEC = TestEngines.exec(RESULT);
+
+    private static List<RecordedEvent> events(List<RecordedEvent> all, String name, long methodId) {
+        final List<RecordedEvent> result = new ArrayList<>();
+        for (RecordedEvent event : all) {
+            if (event.getEventType().getName().equals(name) && event.getLong("methodId") == methodId) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    @Timeout(20)
+    void warm_up_of_one_method_is_recorded(@TempDir Path dir) throws IOException, InterruptedException {
+        final long ID = 0x5EED_0017L;
+        final MethodID method = () -> ID;
+        final Path file = dir.resolve("jit.jfr");
+        final SolutionThread user = new SolutionThread(2, EXEC, TestEngines.instantCompiler(), () -> {
+            for (int i = 0; i < SolutionThread.L2_DEADLINE + 1; i++) {
+                UserThread.current().executeMethod(method);
+            }
+        });
+
+        try (Recording recording = new Recording()) {
+            recording.enable(JitEvents.CompileRequested.class);
+            recording.enable(JitEvents.Compilation.class);
+            recording.enable(JitEvents.CodePublished.class);
+            recording.enable(JitEvents.TierReached.class);
+            recording.start();
+            user.start();
+            user.join();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        final List<RecordedEvent> all = RecordingFile.readAllEvents(file);
+        assertEquals(2, events(all, "jit.CompileRequested", ID).size());
+        assertEquals(2, events(all, "jit.CodePublished", ID).size());
+
+        final List<RecordedEvent> compilations = events(all, "jit.Compilation", ID);
+        assertEquals(2, compilations.size());
+        for (RecordedEvent compilation : compilations) {
+            assertTrue(compilation.getBoolean("succeeded"));
+            assertTrue(compilation.getLong("queueWait") >= 0);
+        }
+
+        final List<RecordedEvent> tiers = events(all, "jit.TierReached", ID);
+        assertEquals(2, tiers.size());
+        for (RecordedEvent tier : tiers) {
+            assertEquals(user.id, tier.getLong("userThread"));
+            assertEquals(tier.getInt("fromTier") + 1, tier.getInt("toTier"));
+        }
+    }
+}
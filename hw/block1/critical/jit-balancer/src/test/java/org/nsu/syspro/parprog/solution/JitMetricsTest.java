@@ -0,0 +1,91 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JitMetricsTest {
+    private static final ExecutionResult RESULT = new ExecutionResult() {
+    };
+
+    private static final ExecutionEngine EXEC = TestEngines.exec(RESULT);
+
+    @Test
+    void log2_buckets_and_quantiles() {
+        assertEquals(0, Log2Histogram.bucket(0));
+        assertEquals(1, Log2Histogram.bucket(1));
+        assertEquals(2, Log2Histogram.bucket(3));
+        assertEquals(11, Log2Histogram.bucket(1_024));
+        assertEquals(Log2Histogram.BUCKETS - 1, Log2Histogram.bucket(Long.MAX_VALUE));
+
+        final var histogram = new Log2Histogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(1_000_000);
+        final long[] counts = new long[Log2Histogram.BUCKETS];
+        histogram.addTo(counts);
+
+        assertEquals(100, Log2Histogram.total(counts));
+        assertEquals(128, Log2Histogram.quantile(counts, 0.5));
+        assertEquals(128, Log2Histogram.quantile(counts, 0.99));
+        assertEquals(1 << 20, Log2Histogram.quantile(counts, 1));
+    }
+
+    @Test
+    @Timeout(10)
+    void terminated_recorders_are_folded() throws InterruptedException {
+        final var metrics = new JitMetrics();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final JitMetrics.Recorder[] recorder = new JitMetrics.Recorder[1];
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    recorder[0].recordExecution(TieredCode.L1, TieredCode.L2);
+                }
+            });
+            recorder[0] = metrics.register(threads[t]);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // second snapshot reads retired totals only
+        assertEquals(4_000, metrics.snapshot().executions(TieredCode.L1));
+        final JitMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(4_000, snapshot.executions(TieredCode.L1));
+        assertEquals(4_000, snapshot.executionsBelowGlobal(TieredCode.L1));
+        assertEquals(0, snapshot.executions(TieredCode.L2));
+    }
+
+    @Test
+    @Timeout(10)
+    void solution_thread_reports_every_execution() throws InterruptedException {
+        final int CALLS = SolutionThread.L2_DEADLINE + 1_000;
+        final CompilationEngine compiler = TestEngines.instantCompiler();
+        final MethodID method = () -> 7;
+        final var user = new SolutionThread(2, EXEC, compiler, () -> {
+            for (int i = 0; i < CALLS; i++) {
+                UserThread.current().executeMethod(method);
+            }
+        });
+        user.start();
+        user.join();
+
+        final JitMetrics.Snapshot snapshot = JitRuntime.of(compiler, 2).metrics.snapshot();
+        assertEquals(CALLS, snapshot.executions(TieredCode.INTERPRETED) + snapshot.executions(TieredCode.L1)
+                + snapshot.executions(TieredCode.L2));
+        assertTrue(snapshot.executions(TieredCode.L2) > 0, snapshot::toString);
+        assertEquals(1, snapshot.compilations(TieredCode.L1) + snapshot.skippedL1());
+        assertEquals(1, snapshot.compilations(TieredCode.L2));
+        assertTrue(snapshot.dispatchSamples() >= CALLS / JitMetrics.DISPATCH_SAMPLE_INTERVAL, snapshot::toString);
+        assertEquals(0, snapshot.queueDepth());
+    }
+}
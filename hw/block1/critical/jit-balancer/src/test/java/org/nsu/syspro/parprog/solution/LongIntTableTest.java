@@ -0,0 +1,121 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongIntTableTest {
+
+    /**
+     * Bytes allocated by the current thread, HotSpot specific.
+     */
+    static long allocatedBytes() {
+        final var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    void basics() {
+        final var table = new LongIntTable();
+        assertEquals(-1, table.get(0, -1));
+        assertEquals(1, table.increment(0));
+        assertEquals(2, table.increment(0));
+        assertEquals(1, table.increment(Long.MIN_VALUE));
+        table.put(-5, 42);
+        assertEquals(42, table.get(-5, 0));
+        assertTrue(table.containsKey(0));
+        assertFalse(table.containsKey(7));
+        assertEquals(3, table.size());
+
+        table.put(7, Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, table.increment(7));
+
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(0, table.get(-5, 0));
+    }
+
+    @Test
+    void growth_keeps_counts() {
+        final var table = new LongIntTable();
+        for (int round = 1; round <= 3; round++) {
+            for (long k = 0; k < 10_000; k++) {
+                assertEquals(round, table.increment(k * 1_000_003));
+            }
+        }
+        assertEquals(10_000, table.size());
+    }
+
+    @Test
+    @Timeout(10)
+    void warm_table_does_not_allocate() {
+        final int KEYS = 1_000;
+        final var table = new LongIntTable();
+        for (int warmup = 0; warmup < 20; warmup++) {
+            for (long k = 0; k < KEYS; k++) {
+                table.increment(k + 1_000_000);
+            }
+        }
+
+        final long before = allocatedBytes();
+        long sum = 0;
+        for (int round = 0; round < 1_000; round++) {
+            for (long k = 0; k < KEYS; k++) {
+                sum += table.increment(k + 1_000_000);
+            }
+        }
+        final long allocated = allocatedBytes() - before;
+
+        assertTrue(sum > 0);
+        // a million increments, only the measurement itself may allocate a few bytes
+        assertTrue(allocated < 1_024, "allocated " + allocated + " bytes");
+    }
+
+    @Test
+    @Timeout(10)
+    void warm_solution_thread_does_not_allocate() throws InterruptedException {
+        final ExecutionResult done = new ExecutionResult() {
+        };
+        final ExecutionEngine exec = TestEngines.exec(done);
+        final CompilationEngine compiler = TestEngines.instantCompiler();
+
+        final MethodID[] methods = new MethodID[32];
+        for (int i = 0; i < methods.length; i++) {
+            final long id = 5_000 + i; // outside of the Long.valueOf cache
+            methods[i] = () -> id;
+        }
+
+        final AtomicLong allocated = new AtomicLong(-1);
+        final UserThread thread = new SolutionThread(2, exec, compiler, () -> {
+            final UserThread self = UserThread.current();
+            // warm-up: every method reaches its deadlines, so everything is L2-compiled afterwards
+            for (int i = 0; i < SolutionThread.L2_DEADLINE + 1; i++) {
+                for (MethodID m : methods) {
+                    self.executeMethod(m);
+                }
+            }
+            final long before = allocatedBytes();
+            for (int i = 0; i < 30_000; i++) {
+                for (MethodID m : methods) {
+                    self.executeMethod(m);
+                }
+            }
+            allocated.set(allocatedBytes() - before);
+        });
+        thread.start();
+        thread.join();
+
+        assertTrue(allocated.get() >= 0);
+        assertTrue(allocated.get() < 1_024, "allocated " + allocated.get() + " bytes");
+    }
+}
@@ -0,0 +1,191 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MethodStateTest {
+
+    @Test
+    void happy_path() {
+        final var state = new MethodState(1);
+        assertEquals(MethodState.NEVER_COMPILED, MethodState.phase(state.word()));
+        assertFalse(state.tryQueueL2());
+
+        assertTrue(state.tryQueueL1());
+        assertFalse(state.tryQueueL1());
+        assertEquals(TieredCode.INTERPRETED, MethodState.readyTier(state.word()));
+        state.completeL1();
+        assertEquals(TieredCode.L1, MethodState.readyTier(state.word()));
+
+        assertTrue(state.tryQueueL2());
+        assertFalse(state.tryQueueL2());
+        state.completeL2();
+
+        final long w = state.word();
+        assertEquals(MethodState.L2_READY, MethodState.phase(w));
+        assertEquals(TieredCode.L2, MethodState.readyTier(w));
+        assertEquals(1, MethodState.l1Compilations(w));
+        assertEquals(1, MethodState.l2Compilations(w));
+    }
+
+    @Test
+    void cancel_returns_permission() {
+        final var state = new MethodState(2);
+        assertTrue(state.tryQueueL1());
+        state.cancelL1();
+        assertEquals(0, MethodState.l1Compilations(state.word()));
+        assertTrue(state.tryQueueL1());
+        state.completeL1();
+
+        assertTrue(state.tryQueueL2());
+        state.cancelL2();
+        assertEquals(MethodState.L1_READY, MethodState.phase(state.word()));
+        assertTrue(state.tryQueueL2());
+    }
+
+    @Test
+    void eviction_allows_exactly_one_recompilation() {
+        final var state = new MethodState(4);
+        assertFalse(state.evictL1());
+        assertTrue(state.tryQueueL1());
+        state.completeL1();
+
+        assertTrue(state.evictL1());
+        long w = state.word();
+        assertEquals(MethodState.NEVER_COMPILED, MethodState.phase(w));
+        assertTrue(MethodState.l1Evicted(w));
+        assertEquals(TieredCode.INTERPRETED, MethodState.readyTier(w));
+
+        // L2 compilation of an evicted method goes back to "evicted" on cancellation
+        assertTrue(state.tryQueueL2());
+        assertEquals(TieredCode.INTERPRETED, MethodState.readyTier(state.word()));
+        state.cancelL2();
+        assertEquals(MethodState.NEVER_COMPILED, MethodState.phase(state.word()));
+        assertTrue(MethodState.l1Evicted(state.word()));
+
+        assertTrue(state.tryQueueL1());
+        state.completeL1();
+        w = state.word();
+        assertFalse(MethodState.l1Evicted(w));
+        assertEquals(2, MethodState.l1Compilations(w));
+        assertFalse(state.evictL1()); // no spare compile_l1 left: pinned
+    }
+
+    @Test
+    void skipped_l1_gives_its_permission_back() {
+        final var state = new MethodState(5);
+        assertTrue(state.tryQueueL1());
+        assertTrue(state.tryUpgradeL1ToL2());
+        long w = state.word();
+        assertEquals(MethodState.L2_QUEUED, MethodState.phase(w));
+        assertEquals(0, MethodState.l1Compilations(w));
+        assertEquals(1, MethodState.l2Compilations(w));
+        // there is no L1 code to run meanwhile
+        assertEquals(TieredCode.INTERPRETED, MethodState.readyTier(w));
+
+        // cancelled L2 falls back to interpretation, L1 is still allowed
+        state.cancelL2();
+        assertEquals(MethodState.NEVER_COMPILED, MethodState.phase(state.word()));
+        assertTrue(state.tryQueueL1());
+        assertTrue(state.tryUpgradeL1ToL2());
+        state.completeL2();
+        w = state.word();
+        assertEquals(TieredCode.L2, MethodState.readyTier(w));
+        assertEquals(0, MethodState.l1Compilations(w));
+        assertFalse(MethodState.l1Evicted(w));
+    }
+
+    @Test
+    void invalidation_starts_over_with_fresh_limits() {
+        final var state = new MethodState(6);
+        assertTrue(state.tryQueueL1());
+        state.completeL1();
+        assertTrue(state.tryQueueL2());
+        state.completeL2();
+        state.invalidate();
+        long w = state.word();
+        assertEquals(MethodState.NEVER_COMPILED, MethodState.phase(w));
+        assertEquals(0, MethodState.l1Compilations(w));
+        assertEquals(0, MethodState.l2Compilations(w));
+
+        // compilation in flight is discarded by its owner
+        assertTrue(state.tryQueueL1());
+        state.invalidate();
+        w = state.word();
+        assertTrue(MethodState.stale(w));
+        assertEquals(MethodState.L1_QUEUED, MethodState.phase(w));
+        assertFalse(state.tryUpgradeL1ToL2());
+        state.completeL1();
+        assertEquals(MethodState.NEVER_COMPILED, MethodState.phase(state.word()));
+        assertFalse(MethodState.stale(state.word()));
+
+        // stale L2 has no L1 code to fall back to
+        assertTrue(state.tryQueueL1());
+        state.completeL1();
+        assertTrue(state.tryQueueL2());
+        state.invalidate();
+        assertEquals(TieredCode.INTERPRETED, MethodState.readyTier(state.word()));
+        state.cancelL2();
+        w = state.word();
+        assertEquals(MethodState.NEVER_COMPILED, MethodState.phase(w));
+        assertEquals(0, MethodState.l1Compilations(w));
+        assertTrue(state.tryQueueL1());
+    }
+
+    @Test
+    void only_owner_completes() {
+        final var state = new MethodState(3);
+        assertThrows(IllegalStateException.class, state::completeL1);
+        assertThrows(IllegalStateException.class, state::completeL2);
+    }
+
+    @Test
+    @Timeout(10)
+    void exactly_one_thread_wins_each_transition() throws Exception {
+        final int THREADS = 8;
+        final int METHODS = 10_000;
+        final var states = new CompilationStates();
+        final AtomicInteger l1Wins = new AtomicInteger(0);
+        final AtomicInteger l2Wins = new AtomicInteger(0);
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+
+        final ArrayList<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                for (long id = 0; id < METHODS; id++) {
+                    final MethodState state = states.of(id);
+                    if (state.tryQueueL1()) {
+                        l1Wins.incrementAndGet();
+                        state.completeL1();
+                    }
+                    if (state.tryQueueL2()) {
+                        l2Wins.incrementAndGet();
+                        state.completeL2();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(METHODS, l1Wins.get());
+        assertEquals(METHODS, l2Wins.get());
+        for (long id = 0; id < METHODS; id++) {
+            assertEquals(MethodState.L2_READY, MethodState.phase(states.peek(id).word()));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OptimizationGoalTest {
+    private static final int BOUND = 4;
+
+    @Test
+    void goals_are_named() {
+        for (OptimizationGoal goal : OptimizationGoal.values()) {
+            assertSame(goal, OptimizationGoal.named(goal.id));
+        }
+        assertSame(OptimizationGoal.BALANCED, OptimizationGoal.configured());
+        assertThrows(IllegalArgumentException.class, () -> OptimizationGoal.named("fastest"));
+    }
+
+    @Test
+    void goal_configures_the_whole_runtime() {
+        for (OptimizationGoal goal : OptimizationGoal.values()) {
+            final JitRuntime runtime = JitRuntime.of(TestEngines.instantCompiler(), BOUND, goal);
+            assertSame(goal, runtime.goal);
+            assertEquals(goal.codeCacheBytes(), runtime.cache.budget(), goal::toString);
+            assertEquals(goal.compilerWorkers(BOUND), runtime.broker.workerLimit(), goal::toString);
+            assertEquals(goal.adaptiveWorkers(), runtime.broker.adaptive(), goal::toString);
+            assertEquals(goal.tierSkipping(), runtime.broker.tierSkipping() != null, goal::toString);
+        }
+    }
+
+    @Test
+    void each_goal_leans_towards_its_metric() {
+        final OptimizationGoal[] goals = OptimizationGoal.values();
+        for (OptimizationGoal goal : goals) {
+            if (goal != OptimizationGoal.HOT_PATH) {
+                assertTrue(goal.policy().threshold(TieredCode.L2) >= OptimizationGoal.HOT_PATH.policy().threshold(TieredCode.L2));
+            }
+            if (goal != OptimizationGoal.WALL_CLOCK) {
+                assertTrue(goal.policy().threshold(TieredCode.L1) > OptimizationGoal.WALL_CLOCK.policy().threshold(TieredCode.L1));
+            }
+            if (goal != OptimizationGoal.RAM_FOOTPRINT) {
+                assertTrue(goal.codeCacheBytes() > OptimizationGoal.RAM_FOOTPRINT.codeCacheBytes());
+            }
+        }
+        assertEquals(CodeCache.UNBOUNDED, OptimizationGoal.HOT_PATH.codeCacheBytes());
+        assertEquals(BOUND, OptimizationGoal.WALL_CLOCK.compilerWorkers(BOUND));
+        assertFalse(OptimizationGoal.WALL_CLOCK.adaptiveWorkers());
+        assertEquals(2, OptimizationGoal.CPU_CYCLES.compilerWorkers(BOUND));
+        assertNotNull(OptimizationGoal.CPU_CYCLES.policy().costModel());
+    }
+
+    @Test
+    void runtime_keeps_the_goal_of_its_first_thread() {
+        final CompilationEngine compiler = TestEngines.instantCompiler();
+        final JitRuntime runtime = JitRuntime.of(compiler, BOUND, OptimizationGoal.RAM_FOOTPRINT);
+        assertSame(runtime, JitRuntime.of(compiler, BOUND));
+        assertSame(runtime, JitRuntime.of(compiler, BOUND, OptimizationGoal.RAM_FOOTPRINT));
+        assertThrows(IllegalStateException.class, () -> JitRuntime.of(compiler, BOUND, OptimizationGoal.HOT_PATH));
+    }
+
+    @Test
+    void runtime_keeps_the_policy_of_its_first_thread() {
+        final CompilationEngine compiler = TestEngines.instantCompiler();
+        final TieredPolicy policy = TieredPolicy.of(10, 100, TieredPolicy.NO_DECAY);
+        new SolutionThread(BOUND, null, compiler, () -> {
+        }, policy);
+        final JitRuntime runtime = JitRuntime.of(compiler, BOUND);
+        assertSame(policy, runtime.policy);
+        assertSame(policy, runtime.broker.tierSkipping());
+        new SolutionThread(BOUND, null, compiler, () -> {
+        }, policy);
+        assertThrows(IllegalStateException.class, () -> new SolutionThread(BOUND, null, compiler, () -> {
+        }, TieredPolicy.of(10, 100, TieredPolicy.NO_DECAY)));
+    }
+}
@@ -0,0 +1,80 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompilationEngine;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SolutionThreadTest {
+    private static final long FIRST = 0x5EED_0025L;
+    private static final int COMPILED = 3;
+
+    private static final ExecutionEngine EXEC =
+            TestEngines.exec(new Result(TieredCode.INTERPRETED), new Result(TieredCode.L1));
+
+    private static final class Result implements ExecutionResult {
+        final int tier;
+
+        Result(int tier) {
+            this.tier = tier;
+        }
+    }
+
+    @Test
+    @Timeout(20)
+    void new_thread_runs_compiled_code_and_releases_it() throws InterruptedException {
+        final CompilationEngine compiler = TestEngines.instantCompiler();
+        final JitRuntime runtime = JitRuntime.of(compiler, 2);
+        for (long id = FIRST; id < FIRST + COMPILED; id++) {
+            final long method = id;
+            final MethodState state = runtime.states.of(method);
+            assertTrue(state.tryQueueL1());
+            state.completeL1();
+            assertNotNull(runtime.cache.publish(state, () -> () -> method, TieredCode.L1));
+        }
+
+        final Throwable[] failure = new Throwable[1];
+        final SolutionThread[] user = new SolutionThread[1];
+        user[0] = new SolutionThread(2, EXEC, compiler, () -> {
+            try {
+                final UserThread self = UserThread.current();
+                assertEquals(0, user[0].profiles());
+                assertEquals(TieredCode.L1, ((Result) self.executeMethod(() -> FIRST + 1)).tier);
+                assertEquals(1, user[0].profiles()); // code of other methods is looked up on their first call
+                assertEquals(TieredCode.L1, ((Result) self.executeMethod(() -> FIRST + 2)).tier);
+                assertEquals(TieredCode.INTERPRETED, ((Result) self.executeMethod(() -> FIRST - 1)).tier);
+                assertEquals(3, user[0].profiles());
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        });
+        user[0].start();
+        user[0].join();
+        assertNull(failure[0]);
+        while (user[0].profiles() != 0) {
+            Thread.sleep(10); // until the aggregator folds the stripe
+        }
+    }
+
+    @Test
+    @Timeout(20)
+    void failed_task_still_releases_its_thread() throws InterruptedException {
+        final SolutionThread user = new SolutionThread(2, EXEC, TestEngines.instantCompiler(), () -> {
+            UserThread.current().executeMethod(() -> FIRST);
+            throw new IllegalStateException("task failed");
+        });
+        final Throwable[] uncaught = new Throwable[1];
+        user.setUncaughtExceptionHandler((t, e) -> uncaught[0] = e);
+        user.start();
+        user.join();
+        assertInstanceOf(IllegalStateException.class, uncaught[0]);
+        while (user.profiles() != 0) {
+            Thread.sleep(10);
+        }
+    }
+}
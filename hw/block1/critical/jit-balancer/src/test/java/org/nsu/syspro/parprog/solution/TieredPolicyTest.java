@@ -0,0 +1,39 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TieredPolicyTest {
+
+    @Test
+    void promotion_rules() {
+        final TieredPolicy policy = TieredPolicy.of(10, 100, TieredPolicy.NO_DECAY);
+        assertFalse(policy.shouldPromote(TieredCode.INTERPRETED, 9));
+        assertTrue(policy.shouldPromote(TieredCode.INTERPRETED, 10));
+        assertFalse(policy.shouldPromote(TieredCode.L1, 99));
+        assertTrue(policy.shouldPromote(TieredCode.L1, 100));
+        assertFalse(policy.shouldPromote(TieredCode.L2, Long.MAX_VALUE));
+    }
+
+    @Test
+    void half_life_decay() {
+        final TieredPolicy policy = TieredPolicy.of(10, 100, 1_000);
+        assertEquals(1_000, policy.decay(1_000, 0));
+        assertEquals(500, policy.decay(1_000, 1_000));
+        assertEquals(250, policy.decay(1_000, 2_000));
+        assertEquals(1_000, TieredPolicy.balanced().decay(1_000, Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void presets() {
+        for (TieredPolicy policy : new TieredPolicy[]{
+                TieredPolicy.balanced(), TieredPolicy.latencyFirst(), TieredPolicy.throughputFirst(), TieredPolicy.cpuFrugal(),
+                TieredPolicy.cpuCycles()}) {
+            // deadlines are kept by SolutionThread, but sane presets request compilation well before them
+            assertTrue(policy.threshold(TieredCode.L1) < SolutionThread.L1_DEADLINE, policy::toString);
+            assertTrue(policy.threshold(TieredCode.L2) < SolutionThread.L2_DEADLINE, policy::toString);
+        }
+        assertThrows(IllegalArgumentException.class, () -> TieredPolicy.of(-1, 1, 1));
+    }
+}
@@ -0,0 +1,85 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TraceRecorderTest {
+
+    @Test
+    @Timeout(10)
+    void round_trip_per_thread(@TempDir Path dir) throws IOException, InterruptedException {
+        final Path file = dir.resolve("trace.bin");
+        final int THREADS = 4;
+        final int CALLS = 50_000; // several chunks per thread
+        final Thread[] threads = new Thread[THREADS];
+        try (TraceRecorder recorder = TraceRecorder.open(file)) {
+            for (int t = 0; t < THREADS; t++) {
+                final TraceRecorder.ThreadLog log = recorder.log(100 + t);
+                final long base = t * 1_000_000L;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < CALLS; i++) {
+                        log.record(base + (i % 97));
+                    }
+                    log.record(-1); // negative ids survive zigzag encoding
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        final TraceReader reader = new TraceReader(file);
+        assertEquals(THREADS * (CALLS + 1), reader.totalEntries());
+        assertEquals(THREADS, reader.threads().size());
+        // compact: far less than 16 bytes per call
+        assertTrue(Files.size(file) < reader.totalEntries() * 6, "size = " + Files.size(file));
+
+        for (int t = 0; t < THREADS; t++) {
+            final TraceReader.Cursor cursor = reader.cursor(100 + t);
+            final long base = t * 1_000_000L;
+            long previous = -1;
+            for (int i = 0; i < CALLS; i++) {
+                assertTrue(cursor.next());
+                assertEquals(base + (i % 97), cursor.methodId());
+                assertTrue(cursor.nanos() >= previous);
+                previous = cursor.nanos();
+            }
+            assertTrue(cursor.next());
+            assertEquals(-1, cursor.methodId());
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    void close_flushes_partial_logs_and_drops_later_records(@TempDir Path dir) throws IOException {
+        final Path file = dir.resolve("trace.bin");
+        final TraceRecorder recorder = TraceRecorder.open(file);
+        final TraceRecorder.ThreadLog log = recorder.log(7);
+        log.record(1);
+        log.record(2);
+        recorder.close();
+        log.record(3);
+
+        final TraceReader.Cursor cursor = new TraceReader(file).cursor(7);
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.methodId());
+        assertTrue(cursor.next());
+        assertEquals(2, cursor.methodId());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    void rejects_foreign_files(@TempDir Path dir) throws IOException {
+        final Path file = dir.resolve("garbage.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        assertThrows(IOException.class, () -> new TraceReader(file));
+    }
+}
@@ -0,0 +1,71 @@
+package org.nsu.syspro.parprog.solution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nsu.syspro.parprog.UserThread;
+import org.nsu.syspro.parprog.external.CompiledMethod;
+import org.nsu.syspro.parprog.external.ExecutionEngine;
+import org.nsu.syspro.parprog.external.ExecutionResult;
+import org.nsu.syspro.parprog.external.MethodID;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualUserThreadsTest {
+    private static final ExecutionResult INTERPRETED = new ExecutionResult() {
+    };
+    private static final ExecutionResult EXECUTED = new ExecutionResult() {
+    };
+
+    /**
+     * Fails an execution which happens on a thread other than the one bound to the current {@link UserThread}.
+     */
+    private static final class SameThreadEngine implements ExecutionEngine {
+        final ThreadLocal<UserThread> bound = new ThreadLocal<>();
+        final AtomicInteger violations = new AtomicInteger(0);
+
+        private void check() {
+            final UserThread current = UserThread.current();
+            if (bound.get() == null) {
+                bound.set(current);
+            } else if (bound.get() != current) {
+                violations.incrementAndGet();
+            }
+        }
+
+        @Override
+        public ExecutionResult interpret(MethodID id) {
+            check();
+            return INTERPRETED;
+        }
+
+        @Override
+        public ExecutionResult execute(CompiledMethod method) {
+            check();
+            return EXECUTED;
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void runs_user_work_in_one_thread() throws InterruptedException {
+        final var exec = new SameThreadEngine();
+        final MethodID method = () -> 1;
+        final AtomicLong runner = new AtomicLong(-1);
+        final var user = new SolutionThread(2, exec, TestEngines.instantCompiler(), () -> {
+            runner.set(Thread.currentThread().getId());
+            for (int i = 0; i < SolutionThread.L1_DEADLINE + 1; i++) {
+                UserThread.current().executeMethod(method);
+            }
+            assertSame(EXECUTED, UserThread.current().executeMethod(method));
+        });
+
+        final Thread thread = VirtualUserThreads.start(user);
+        thread.join();
+        assertEquals(thread.getId(), runner.get());
+        assertEquals(0, exec.violations.get());
+    }
+}
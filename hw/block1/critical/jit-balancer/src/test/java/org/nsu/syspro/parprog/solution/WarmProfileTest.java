@@ -0,0 +1,131 @@
+package org.nsu.syspro.parprog.solution;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.nsu.syspro.parprog.helpers.TestEngines;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WarmProfileTest {
+    private static void awaitTier(MethodState state, int tier) throws InterruptedException {
+        while (MethodState.readyTier(state.word()) < tier) {
+            state.awaitChange(state.word(), 10);
+        }
+    }
+
+    @Test
+    void captured_profile_survives_round_trip(@TempDir Path dir) throws IOException {
+        final var states = new CompilationStates();
+        final MethodState l1 = states.of(1);
+        assertTrue(l1.tryQueueL1());
+        l1.completeL1();
+        final MethodState l2 = states.of(2);
+        assertTrue(l2.tryQueueL1());
+        l2.completeL1();
+        assertTrue(l2.tryQueueL2());
+        l2.completeL2();
+        states.of(3); // interpreted only
+
+        final Path file = dir.resolve("profile.txt");
+        WarmProfile.capture(List.of(states)).write(file);
+        final List<String> lines = Files.readAllLines(file);
+        assertTrue(lines.get(0).startsWith("#"));
+        assertEquals(List.of("2 2 0", "1 1 0"), lines.subList(1, lines.size()));
+        assertEquals(2, WarmProfile.read(file).size());
+    }
+
+    @Test
+    void malformed_profile_is_rejected(@TempDir Path dir) throws IOException {
+        final Path file = dir.resolve("profile.txt");
+        Files.write(file, List.of("# comment", "", "1 1 5", "2 3 5"));
+        final IOException e = assertThrows(IOException.class, () -> WarmProfile.read(file));
+        assertTrue(e.getMessage().contains(":4:"), e.getMessage());
+    }
+
+    private static List<RecordedEvent> failures(Path dir, Runnable action) throws IOException {
+        final Path file = dir.resolve("jit.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(JitEvents.WarmProfileFailed.class);
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    @Test
+    void corrupt_profile_means_cold_start_and_is_kept_if_nothing_was_captured(@TempDir Path dir) throws IOException {
+        final Path file = dir.resolve("profile.txt");
+        final List<String> corrupt = List.of("1 1 5", "garbage");
+        Files.write(file, corrupt);
+        final WarmProfile[] loaded = new WarmProfile[1];
+        final List<RecordedEvent> events = failures(dir, () -> loaded[0] = WarmProfile.load(file));
+        assertEquals(0, loaded[0].size());
+        assertEquals(1, events.size());
+        assertEquals(file.toString(), events.get(0).getString("path"));
+        assertFalse(events.get(0).getBoolean("writing"));
+        assertTrue(events.get(0).getString("message").contains(":2:"));
+
+        WarmProfile.save(file, loaded[0], WarmProfile.capture(List.of(new CompilationStates())));
+        assertEquals(corrupt, Files.readAllLines(file));
+    }
+
+    @Test
+    void unwritable_profile_is_reported(@TempDir Path dir) throws IOException {
+        final Path file = dir.resolve("missing").resolve("profile.txt");
+        final Path source = dir.resolve("profile.txt");
+        Files.write(source, List.of("1 1 5"));
+        final WarmProfile profile = WarmProfile.read(source);
+        final List<RecordedEvent> events = failures(dir, () -> WarmProfile.save(file, profile, profile));
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).getBoolean("writing"));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void saved_profile_keeps_methods_this_run_never_reached(@TempDir Path dir) throws IOException {
+        final Path file = dir.resolve("profile.txt");
+        Files.write(file, List.of("1 2 100", "2 1 10"));
+        final var states = new CompilationStates();
+        final MethodState reached = states.of(2);
+        assertTrue(reached.tryQueueL1());
+        reached.completeL1();
+        assertTrue(reached.tryQueueL2());
+        reached.completeL2();
+
+        WarmProfile.save(file, WarmProfile.load(file), WarmProfile.capture(List.of(states)));
+        final List<String> lines = Files.readAllLines(file);
+        assertEquals(List.of("1 2 100", "2 2 10"), lines.subList(1, lines.size()));
+    }
+
+    @Test
+    @Timeout(10)
+    void scheduled_profile_compiles_every_tier_once(@TempDir Path dir) throws IOException, InterruptedException {
+        final Path file = dir.resolve("profile.txt");
+        Files.write(file, List.of("7 2 100", "8 1 10"));
+        final var states = new CompilationStates();
+        final var broker = new CompilerBroker(TestEngines.instantCompiler(), new CodeCache(), 2, 16, 100, 1);
+
+        assertEquals(2, WarmProfile.read(file).schedule(broker, states));
+        final MethodState l2 = states.of(7);
+        final MethodState l1 = states.of(8);
+        awaitTier(l2, TieredCode.L2);
+        awaitTier(l1, TieredCode.L1);
+
+        assertEquals(1, MethodState.l1Compilations(l2.word()));
+        assertEquals(1, MethodState.l2Compilations(l2.word()));
+        assertEquals(MethodState.L1_READY, MethodState.phase(l1.word()));
+        // nothing is left to prefetch
+        assertEquals(0, WarmProfile.read(file).schedule(broker, states));
+    }
+}